@@ -0,0 +1,65 @@
+package com.builtbroken.mc.codegen.bench;
+
+import com.builtbroken.mc.codegen.data.BuildData;
+import com.builtbroken.mc.codegen.processor.Processor;
+import com.builtbroken.mc.codegen.template.Template;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Processor for the synthetic sources, reads the output class name and template keys
+ * from the annotation.
+ *
+ * @see <a href="https://github.com/BuiltBrokenModding/VoltzEngine/blob/development/license.md">License</a> for what you can and can't do with the code.
+ */
+public class BenchProcessor extends Processor
+{
+    public BenchProcessor()
+    {
+        super(SyntheticSources.ANNOTATION, SyntheticSources.TEMPLATE_ANNOTATION, SyntheticSources.CLASS_TO_EXTEND);
+    }
+
+    @Override
+    public void handleFile(File outputFolder, BuildData buildData, String spacer) throws IOException
+    {
+        final List<Template> templates = new ArrayList();
+        for (String part : buildData.annotations.get(annotationKey).split(","))
+        {
+            String[] split = part.split("=", 2);
+            String key = split[0].trim();
+            String value = split[1].replace("\"", "").trim();
+            if (key.equals("className"))
+            {
+                buildData.outputClassName = value;
+            }
+            else if (key.equals("wrappers"))
+            {
+                templates.addAll(getTemplates(value.split(";")));
+            }
+        }
+        build(outputFolder, templates, buildData, spacer);
+    }
+
+    /**
+     * Gets the loaded templates for the keys
+     *
+     * @param keys - template keys
+     * @return templates that were found
+     */
+    public List<Template> getTemplates(String... keys)
+    {
+        final List<Template> templates = new ArrayList();
+        for (String key : keys)
+        {
+            Template template = templateMap.get(key.trim());
+            if (template != null)
+            {
+                templates.add(template);
+            }
+        }
+        return templates;
+    }
+}
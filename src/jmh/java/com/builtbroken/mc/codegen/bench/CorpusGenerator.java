@@ -0,0 +1,140 @@
+package com.builtbroken.mc.codegen.bench;
+
+import com.builtbroken.mc.codegen.Main;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * Writes a synthetic source tree and template folder for scale testing.
+ * <p>
+ * Sources are spread over nested packages, a share of them set by the density carry the
+ * processor annotation and each annotated class uses a number of templates picked at random.
+ * Templates use the #StartFields#/#StartMethods# format. The same seed always creates the same corpus.
+ * <p>
+ * Arguments: -output=folder -files=1000 -depth=3 -branch=10 -templates=100 -fanout=4
+ * -density=1.0 -fields=10 -methods=5 -seed=1
+ *
+ * @see <a href="https://github.com/BuiltBrokenModding/VoltzEngine/blob/development/license.md">License</a> for what you can and can't do with the code.
+ */
+public class CorpusGenerator
+{
+    /** Number of source files */
+    public int files = 1000;
+    /** Package levels below the root package */
+    public int depth = 3;
+    /** Packages per level */
+    public int branch = 10;
+    /** Number of templates */
+    public int templates = 100;
+    /** Templates used by each annotated class */
+    public int fanout = 4;
+    /** Share of source files with the processor annotation, 0 to 1 */
+    public double density = 1.0;
+    /** Fields in each template */
+    public int fields = 10;
+    /** Methods in each template */
+    public int methods = 5;
+    /** Seed for picking templates and annotated files */
+    public long seed = 1;
+
+    public static void main(String... args) throws IOException
+    {
+        final HashMap<String, String> settings = Main.loadArgs(args);
+        if (!settings.containsKey("output"))
+        {
+            Main.error("Missing -output=\"path/to/corpus\"");
+        }
+        final CorpusGenerator generator = new CorpusGenerator().load(settings);
+        final File folder = new File(settings.get("output"));
+        final int annotated = generator.generate(folder);
+        Main.out("Wrote " + generator.files + " sources, " + annotated + " annotated, and " + generator.templates + " templates to " + folder);
+    }
+
+    /**
+     * Reads settings from program arguments, missing settings keep their value
+     *
+     * @param settings - map of argument to value
+     * @return this
+     */
+    public CorpusGenerator load(HashMap<String, String> settings)
+    {
+        files = getInt(settings, "files", files);
+        depth = getInt(settings, "depth", depth);
+        branch = getInt(settings, "branch", branch);
+        templates = getInt(settings, "templates", templates);
+        fanout = getInt(settings, "fanout", fanout);
+        fields = getInt(settings, "fields", fields);
+        methods = getInt(settings, "methods", methods);
+        if (settings.containsKey("density"))
+        {
+            density = Double.parseDouble(settings.get("density"));
+        }
+        if (settings.containsKey("seed"))
+        {
+            seed = Long.parseLong(settings.get("seed"));
+        }
+        return this;
+    }
+
+    private static int getInt(HashMap<String, String> settings, String key, int defaultValue)
+    {
+        String value = settings.get(key);
+        return value != null && !value.isEmpty() ? Integer.parseInt(value) : defaultValue;
+    }
+
+    /**
+     * Writes the corpus, src and templates folders are created inside the folder
+     *
+     * @param folder - folder to write to, existing content is deleted
+     * @return number of annotated source files
+     * @throws IOException
+     */
+    public int generate(File folder) throws IOException
+    {
+        SyntheticSources.delete(folder);
+        final File srcFolder = new File(folder, "src");
+        final File templateFolder = new File(folder, "templates");
+        final Random random = new Random(seed);
+
+        for (int i = 0; i < templates; i++)
+        {
+            String key = SyntheticSources.templateKey(i);
+            SyntheticSources.write(new File(templateFolder, key + "Template.java"), SyntheticSources.template(key, fields, methods, 4));
+        }
+
+        int annotated = 0;
+        final int used = Math.min(fanout, templates);
+        for (int i = 0; i < files; i++)
+        {
+            //Walk down the package levels using the index as digits
+            final StringBuilder classPackage = new StringBuilder("com.corpus");
+            int index = i;
+            for (int level = 0; level < depth; level++)
+            {
+                classPackage.append(".p").append(index % branch);
+                index /= branch;
+            }
+            final String className = "Source" + i;
+
+            String[] keys = new String[0];
+            if (used > 0 && random.nextDouble() < density)
+            {
+                keys = new String[used];
+                //Consecutive keys from a random start so classes share combinations
+                int start = random.nextInt(templates);
+                for (int k = 0; k < used; k++)
+                {
+                    keys[k] = SyntheticSources.templateKey((start + k) % templates);
+                }
+                annotated++;
+            }
+
+            final File file = new File(srcFolder, classPackage.toString().replace(".", File.separator) + File.separator + className + ".java");
+            SyntheticSources.write(file, SyntheticSources.source(classPackage.toString(), className, i % 3, keys));
+        }
+        return annotated;
+    }
+}
@@ -0,0 +1,46 @@
+package com.builtbroken.mc.codegen.bench;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * Silences the debug output of the generator while scale runs are timed, printing
+ * each line would otherwise dominate the measured time
+ *
+ * @see <a href="https://github.com/BuiltBrokenModding/VoltzEngine/blob/development/license.md">License</a> for what you can and can't do with the code.
+ */
+public class Quiet
+{
+    private static PrintStream original;
+
+    public static synchronized void start()
+    {
+        if (original == null)
+        {
+            original = System.out;
+            System.setOut(new PrintStream(new OutputStream()
+            {
+                @Override
+                public void write(int b)
+                {
+
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len)
+                {
+
+                }
+            }));
+        }
+    }
+
+    public static synchronized void stop()
+    {
+        if (original != null)
+        {
+            System.setOut(original);
+            original = null;
+        }
+    }
+}
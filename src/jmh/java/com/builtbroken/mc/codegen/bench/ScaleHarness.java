@@ -0,0 +1,117 @@
+package com.builtbroken.mc.codegen.bench;
+
+import com.builtbroken.mc.codegen.Main;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Generates corpora of several sizes and times a full run of {@link Main} against each.
+ * <p>
+ * Records wall time, peak heap and source files per second for each size, printed as a
+ * table and appended as CSV to the report file. Runs happen in this JVM one after the
+ * other, start it with the heap size the build machines use. Peak heap is the sum of the
+ * peak of each heap pool, which is reset before each run.
+ * <p>
+ * Arguments: -work=folder -sizes=1000,10000,100000 -report=scale.csv -mainArgs="-pipeline"
+ * plus any {@link CorpusGenerator} setting other than -files and -output.
+ *
+ * @see <a href="https://github.com/BuiltBrokenModding/VoltzEngine/blob/development/license.md">License</a> for what you can and can't do with the code.
+ */
+public class ScaleHarness
+{
+    public static void main(String... args) throws IOException
+    {
+        final HashMap<String, String> settings = Main.loadArgs(args);
+        final File work = new File(settings.containsKey("work") ? settings.get("work") : "scale-corpus");
+        final File report = new File(settings.containsKey("report") ? settings.get("report") : "scale.csv");
+        final String sizes = settings.containsKey("sizes") ? settings.get("sizes") : "1000,10000,100000";
+        final String mainArgs = settings.containsKey("mainArgs") ? settings.get("mainArgs").trim() : "";
+
+        final List<String> lines = new ArrayList();
+        for (String size : sizes.split(","))
+        {
+            final CorpusGenerator generator = new CorpusGenerator().load(settings);
+            generator.files = Integer.parseInt(size.trim());
+
+            final File corpus = new File(work, "corpus-" + generator.files);
+            Main.out("Generating " + generator.files + " sources in " + corpus);
+            final int annotated = generator.generate(corpus);
+
+            final List<String> runArgs = new ArrayList();
+            runArgs.add("-src=" + new File(corpus, "src").getAbsolutePath());
+            runArgs.add("-templates=" + new File(corpus, "templates").getAbsolutePath());
+            runArgs.add("-output=" + new File(corpus, "output").getAbsolutePath());
+            runArgs.add("-processors=" + BenchProcessor.class.getName());
+            if (!mainArgs.isEmpty())
+            {
+                for (String arg : mainArgs.split(" "))
+                {
+                    runArgs.add(arg);
+                }
+            }
+
+            //Measure the run
+            System.gc();
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+            {
+                pool.resetPeakUsage();
+            }
+            final long start = System.nanoTime();
+            Quiet.start();
+            try
+            {
+                Main.main(runArgs.toArray(new String[runArgs.size()]));
+            }
+            finally
+            {
+                Quiet.stop();
+            }
+            final long wallMs = (System.nanoTime() - start) / 1000000;
+
+            long peakHeap = 0;
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+            {
+                if (pool.getType() == MemoryType.HEAP)
+                {
+                    peakHeap += pool.getPeakUsage().getUsed();
+                }
+            }
+            final double filesPerSecond = generator.files * 1000.0 / Math.max(1, wallMs);
+
+            final String line = generator.files + "," + annotated + "," + generator.templates + "," + generator.fanout + "," + wallMs + ","
+                    + (peakHeap / (1024 * 1024)) + "," + String.format(Locale.ROOT, "%.1f", filesPerSecond) + ",\"" + mainArgs + "\"";
+            lines.add(line);
+            Main.out("  " + generator.files + " sources: " + wallMs + "ms, peak heap " + (peakHeap / (1024 * 1024)) + "MB, "
+                    + String.format(Locale.ROOT, "%.1f", filesPerSecond) + " files/s");
+        }
+
+        //Append so runs with different settings can be compared
+        final boolean header = !report.exists();
+        FileWriter writer = new FileWriter(report, true);
+        try
+        {
+            if (header)
+            {
+                writer.write("files,annotated,templates,fanout,wall_ms,peak_heap_mb,files_per_second,main_args\n");
+            }
+            for (String line : lines)
+            {
+                writer.write(line + "\n");
+            }
+        }
+        finally
+        {
+            writer.close();
+        }
+        Main.out("Results appended to " + report);
+    }
+}
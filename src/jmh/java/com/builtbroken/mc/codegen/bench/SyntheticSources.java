@@ -0,0 +1,136 @@
+package com.builtbroken.mc.codegen.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * Creates source and template text shaped like the files the generator runs on,
+ * sized by the number of annotations, fields and methods.
+ *
+ * @see <a href="https://github.com/BuiltBrokenModding/VoltzEngine/blob/development/license.md">License</a> for what you can and can't do with the code.
+ */
+public class SyntheticSources
+{
+    public static final String ANNOTATION = "TileWrapped";
+    public static final String TEMPLATE_ANNOTATION = "TileWrappedTemplate";
+    public static final String CLASS_TO_EXTEND = "TileEntityWrapper";
+
+    /**
+     * Creates a source class marked for generation
+     *
+     * @param classPackage     - package of the class
+     * @param className        - name of the class
+     * @param extraAnnotations - number of annotations to add that no processor handles
+     * @param wrappers         - template keys for the output
+     * @return source text
+     */
+    public static String source(String classPackage, String className, int extraAnnotations, String... wrappers)
+    {
+        final StringBuilder builder = new StringBuilder();
+        builder.append("package ").append(classPackage).append(";\n\n");
+        builder.append("import java.util.List;\n");
+        builder.append("import java.util.Map;\n\n");
+        builder.append("/**\n * Synthetic class {@link ").append(className).append("} used for scale testing\n */\n");
+        for (int i = 0; i < extraAnnotations; i++)
+        {
+            builder.append("@Marker").append(i).append("(value = \"").append(i).append("\")\n");
+        }
+        if (wrappers.length > 0)
+        {
+            builder.append("@").append(ANNOTATION).append("(className = \".gen.").append(className).append("Wrapped\", wrappers = \"");
+            for (int i = 0; i < wrappers.length; i++)
+            {
+                if (i > 0)
+                {
+                    builder.append(";");
+                }
+                builder.append(wrappers[i]);
+            }
+            builder.append("\")\n");
+        }
+        builder.append("public class ").append(className).append("\n{\n");
+        builder.append("    protected List<String> names;\n");
+        builder.append("    protected Map<String, Integer> values;\n\n");
+        builder.append("    public int size()\n    {\n        return names.size();\n    }\n");
+        builder.append("}\n");
+        return builder.toString();
+    }
+
+    /**
+     * Creates a template in the #StartFields#/#StartMethods# format
+     *
+     * @param key     - template key
+     * @param fields  - number of fields
+     * @param methods - number of methods, each returns one of the fields
+     * @param imports - number of imports
+     * @return template text
+     */
+    public static String template(String key, int fields, int methods, int imports)
+    {
+        final StringBuilder builder = new StringBuilder();
+        builder.append("package com.bench.templates;\n\n");
+        builder.append("import com.bench.api.I").append(key).append(";\n");
+        for (int i = 0; i < imports; i++)
+        {
+            builder.append("import com.bench.api.Type").append(i).append(";\n");
+        }
+        builder.append("\n/**\n * Template ").append(key).append("\n */\n");
+        builder.append("@").append(TEMPLATE_ANNOTATION).append("(annotationName = \"").append(key).append("\")\n");
+        builder.append("public class ").append(key).append("Template extends ").append(CLASS_TO_EXTEND).append(" implements I").append(key).append("\n{\n");
+        builder.append("    //#StartFields#\n");
+        for (int i = 0; i < fields; i++)
+        {
+            builder.append("    protected Type").append(imports > 0 ? i % imports : 0).append(" ").append(key.toLowerCase()).append("Field").append(i).append(" = null;\n");
+        }
+        builder.append("    //#EndFields#\n\n");
+        builder.append("    //#StartMethods#\n");
+        for (int i = 0; i < methods; i++)
+        {
+            final int field = fields > 0 ? i % fields : 0;
+            builder.append("    public Object get").append(key).append(i).append("()\n    {\n");
+            builder.append("        //Returns \"field\" {").append(field).append("}\n");
+            builder.append("        return ").append(fields > 0 ? key.toLowerCase() + "Field" + field : "null").append(";\n    }\n\n");
+        }
+        builder.append("    //#EndMethods#\n");
+        builder.append("}\n");
+        return builder.toString();
+    }
+
+    /**
+     * Gets the template key for the index
+     *
+     * @param index - index of the template
+     * @return key
+     */
+    public static String templateKey(int index)
+    {
+        return "Wrapper" + index;
+    }
+
+    public static File write(File file, String text) throws IOException
+    {
+        if (file.getParentFile() != null && !file.getParentFile().exists())
+        {
+            file.getParentFile().mkdirs();
+        }
+        Files.write(file.toPath(), text.getBytes());
+        return file;
+    }
+
+    public static void delete(File file)
+    {
+        if (file.isDirectory())
+        {
+            File[] files = file.listFiles();
+            if (files != null)
+            {
+                for (File child : files)
+                {
+                    delete(child);
+                }
+            }
+        }
+        file.delete();
+    }
+}
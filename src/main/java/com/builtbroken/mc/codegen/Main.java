@@ -1,20 +1,44 @@
 package com.builtbroken.mc.codegen;
 
+import com.builtbroken.mc.codegen.batch.BatchRun;
+import com.builtbroken.mc.codegen.compiler.CompilingOutputSink;
 import com.builtbroken.mc.codegen.data.BuildData;
+import com.builtbroken.mc.codegen.data.BuildManifest;
+import com.builtbroken.mc.codegen.data.ClassHeader;
+import com.builtbroken.mc.codegen.logging.Log;
+import com.builtbroken.mc.codegen.metrics.RunMetrics;
+import com.builtbroken.mc.codegen.output.ArchiveOutputSink;
+import com.builtbroken.mc.codegen.output.FolderOutputSink;
+import com.builtbroken.mc.codegen.output.OutputSink;
+import com.builtbroken.mc.codegen.pipeline.GeneratorPipeline;
 import com.builtbroken.mc.codegen.processor.Processor;
-import com.builtbroken.mc.codegen.template.Parser;
+import com.builtbroken.mc.codegen.processor.ProcessorDescriptor;
+import com.builtbroken.mc.codegen.processor.ProcessorIndex;
+import com.builtbroken.mc.codegen.scan.AnnotationPrefilter;
+import com.builtbroken.mc.codegen.scan.HeaderScanner;
+import com.builtbroken.mc.codegen.scan.ScanTask;
+import com.builtbroken.mc.codegen.template.TemplateCache;
+import com.builtbroken.mc.codegen.template.TemplateLibrary;
+import com.builtbroken.mc.codegen.template.TemplateRegistry;
 import com.builtbroken.mc.codegen.utils.Utils;
+import com.builtbroken.mc.codegen.watch.WatchDaemon;
 
 import java.awt.*;
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * @see <a href="https://github.com/BuiltBrokenModding/VoltzEngine/blob/development/license.md">License</a> for what you can and can't do with the code.
@@ -22,198 +46,535 @@ import java.util.regex.Pattern;
  */
 public class Main
 {
-    public static Pattern packagePattern = Pattern.compile("package(.*?);");
-
     public static void main(String... args)
     {
-        out("VoltzEngine Code Generator v0.1.0");
-        out("Parsing arguments...");
-
         //Load arguments
         HashMap<String, String> launchSettings = loadArgs(args);
+        if (launchSettings.containsKey("log"))
+        {
+            Log.setLevel(launchSettings.get("log"));
+        }
+
+        out("VoltzEngine Code Generator v0.1.0");
+        out("Parsed arguments");
 
         if(launchSettings.containsKey("settings"))
         {
-            //TODO load settings file
+            File settingsFile = Utils.getFile(new File("."), launchSettings.get("settings"));
+            try
+            {
+                BatchRun run = BatchRun.load(settingsFile, launchSettings);
+                String jobThreads = launchSettings.get("jobThreads");
+                run.run(jobThreads != null && !jobThreads.isEmpty() ? Integer.parseInt(jobThreads) : Runtime.getRuntime().availableProcessors());
+            }
+            catch (IOException e)
+            {
+                error("Failed to load settings file " + settingsFile, e);
+            }
         }
-        else if (launchSettings.containsKey("src") && launchSettings.containsKey("templates") && launchSettings.containsKey("output") && launchSettings.containsKey("processors"))
+        else if (launchSettings.containsKey("src") && launchSettings.containsKey("templates") && launchSettings.containsKey("output"))
         {
-            //TODO migrate to settings object and run object
+            runJob(new File("."), launchSettings, null);
+        }
+        else if(!GraphicsEnvironment.isHeadless())
+        {
+            //TODO open java FX app allowing creation of settings files
+        }
+        else
+        {
+            error("In order for the program to function you need to specify in the program arguments: " +
+                    "-src=\"path/to/source/files\" " +
+                    "-templates=\"path/to/source/templates\"" +
+                    " -output=\"path/to/source/output\"" +
+                    " optional: -processors=\"class,class\" processors to run, defaults to every processor with a ProcessorDescriptor service," +
+                    " -threads=\"count\" to scan the source folder in parallel," +
+                    " -incremental to only generate files whose source or templates changed," +
+                    " -prune to keep the output folder and only delete outputs that are no longer generated," +
+                    " -manifest=\"path/to/manifest/file\" where -incremental, -prune and -watch track outputs, defaults to a file next to the output folder," +
+                    " -templateCache=\"path/to/cache/file\" to store parsed templates between runs," +
+                    " -renderCacheSize=\"count\" max template combinations to keep rendered, 0 to disable," +
+                    " -keepUnusedImports to write imports even if the class does not use them," +
+                    " -pipeline to run scan, parse, generate and write as separate stages" +
+                    " (-parseThreads, -generateThreads, -writeThreads and -queueSize configure the stages)," +
+                    " -outputArchive=\"path/to/generated.jar\" to write the generated sources into one jar or zip," +
+                    " -compile=\"path/to/classes\" to compile the generated classes in process" +
+                    " (-compileClasspath sets the classpath, -noSourceOutput skips writing the sources)," +
+                    " -watch to keep running and regenerate outputs as sources and templates change," +
+                    " -report=\"path/to/report.json\" to write timings and counts for the run as JSON," +
+                    " -log=\"quiet|info|debug\" to set how much is printed, debug lists every file." +
+                    " Or -settings=\"path/to/settings/file\" to run several jobs from a settings file" +
+                    " (-jobThreads sets how many jobs run at the same time)");
+        }
 
-            File runFolder = new File(".");
-            File targetFolder;
-            List<File> templateFolders = new ArrayList();
-            File outputFolder;
+        out("Exiting...");
+        Log.flush();
+    }
 
-            //Get source folder path
-            String path = launchSettings.get("src");
-            if (path.startsWith("."))
+    /**
+     * Runs a single generator job
+     *
+     * @param runFolder      - folder relative paths are resolved against
+     * @param launchSettings - settings of the job
+     * @param library        - template folders shared between jobs, null to load the folders for this job only
+     */
+    public static void runJob(File runFolder, HashMap<String, String> launchSettings, TemplateLibrary library)
+    {
+        File targetFolder;
+        List<File> templateFolders = new ArrayList();
+        File outputFolder;
+
+        //Get source folder path
+        String path = launchSettings.get("src");
+        if (path.startsWith("."))
+        {
+            targetFolder = new File(runFolder, path.substring(1, path.length()));
+        }
+        else
+        {
+            targetFolder = new File(path);
+        }
+
+        //Load template folders
+        String[] folders = launchSettings.get("templates").split(",");
+        for (String folder : folders)
+        {
+            File file;
+            if (folder.startsWith("."))
             {
-                targetFolder = new File(runFolder, path.substring(1, path.length()));
+                file = new File(runFolder, folder.substring(1, folder.length()));
             }
             else
             {
-                targetFolder = new File(path);
+                file = new File(folder);
+            }
+            //Ensure we have a template folder, archives are read in place
+            if (!file.isDirectory() && !Utils.isArchive(file))
+            {
+                error("The template folder '" + file + "' does not exist.");
+            }
+            else
+            {
+                templateFolders.add(file);
+            }
+        }
+        if (templateFolders.isEmpty())
+        {
+            error("No template folders were loaded, can not continue as processors will have noting to generate.");
+        }
+
+        //Get output folder
+        path = launchSettings.get("output");
+        if (path.startsWith("."))
+        {
+            outputFolder = new File(runFolder, path.substring(1, path.length()));
+        }
+        else
+        {
+            outputFolder = new File(path);
+        }
+
+        //Ensure we have an output folder
+        if (outputFolder.exists() && !outputFolder.isDirectory())
+        {
+            out("output folder is not a directory: " + outputFolder);
+            System.exit(1);
+        }
+
+        //Open the source folder, jar and zip archives are read through a zip file system without extracting
+        final List<FileSystem> archives = new ArrayList();
+        Path sourceFolder = null;
+        if (targetFolder.isDirectory() || Utils.isArchive(targetFolder))
+        {
+            try
+            {
+                sourceFolder = Utils.openFolder(targetFolder, archives);
             }
+            catch (IOException e)
+            {
+                error("Failed to open source archive " + targetFolder, e);
+            }
+        }
 
-            //Load template folders
-            String[] folders = launchSettings.get("templates").split(",");
-            for (String folder : folders)
+        //The archive is written in full each run so there is nothing to skip or watch
+        if (launchSettings.containsKey("outputArchive") && (launchSettings.containsKey("incremental") || launchSettings.containsKey("watch")))
+        {
+            warn("-incremental and -watch are not supported with -outputArchive and will be ignored");
+            launchSettings.remove("incremental");
+            launchSettings.remove("watch");
+        }
+
+        //Compiled classes are only written once the run ends, watch mode would keep adding to a closed compile
+        if (launchSettings.containsKey("compile") && launchSettings.containsKey("watch"))
+        {
+            warn("-watch is not supported with -compile and will be ignored");
+            launchSettings.remove("watch");
+        }
+
+        //Without source files there are no outputs to check, every source would count as changed
+        if (launchSettings.containsKey("compile") && launchSettings.containsKey("noSourceOutput") && launchSettings.containsKey("incremental"))
+        {
+            warn("-incremental is not supported with -noSourceOutput and will be ignored");
+            launchSettings.remove("incremental");
+        }
+
+        //Find processors, they are only created once a source file uses them
+        final List<ProcessorDescriptor> descriptors = loadDescriptors(launchSettings);
+        if (descriptors.isEmpty())
+        {
+            error("No processors were found, can not continue without processors to run");
+        }
+        final StringBuilder processorNames = new StringBuilder();
+        for (ProcessorDescriptor descriptor : descriptors)
+        {
+            processorNames.append(descriptor.processorClass).append(',');
+        }
+
+        //Load manifest of the last run, incremental builds skip unchanged sources with it and
+        //pruned builds use it to remove outputs that are no longer generated, watch mode uses it to track outputs
+        BuildManifest manifest = null;
+        final boolean writesSources = !launchSettings.containsKey("outputArchive") && !(launchSettings.containsKey("compile") && launchSettings.containsKey("noSourceOutput"));
+        final File manifestFile = launchSettings.containsKey("manifest") ? Utils.getFile(runFolder, launchSettings.get("manifest")) : BuildManifest.getDefaultFile(outputFolder);
+        if (launchSettings.containsKey("incremental") || launchSettings.containsKey("watch") || launchSettings.containsKey("prune") && writesSources)
+        {
+            //Templates are tracked per file, only settings that change every output are hashed here
+            String settings = processorNames + "|" + launchSettings.containsKey("keepUnusedImports");
+            manifest = new BuildManifest(sourceFolder, outputFolder, Utils.hash(settings.getBytes()));
+            manifest.previous = BuildManifest.load(manifestFile, sourceFolder, outputFolder);
+            manifest.skipUnchanged = launchSettings.containsKey("incremental");
+            if (manifest.skipUnchanged)
             {
-                File file;
-                if (folder.startsWith("."))
+                if (manifest.previous == null)
                 {
-                    file = new File(runFolder, folder.substring(1, folder.length()));
+                    out("No build manifest found, doing a full build");
+                }
+                else if (!manifest.previous.settingsHash.equals(manifest.settingsHash))
+                {
+                    out("Processors or settings changed, regenerating all files");
                 }
                 else
                 {
-                    file = new File(folder);
+                    out("Incremental build, only changed files will be generated");
                 }
-                //Ensure we have a template folder
-                if (!file.exists() || !file.isDirectory())
+            }
+        }
+
+        //Outputs of the last run are only known from its manifest, without one the folder is cleaned
+        //up front. Otherwise outputs that are not generated again are deleted after the run.
+        if (launchSettings.containsKey("prune") && !writesSources)
+        {
+            warn("-prune only applies to generated source files and will be ignored");
+        }
+        if(!outputFolder.exists())
+        {
+            outputFolder.mkdirs();
+        }
+        else if (manifest == null || manifest.previous == null)
+        {
+            Utils.cleanFolder(outputFolder);
+        }
+
+        //Ensure we have a target source folder
+        if (sourceFolder != null)
+        {
+            out("");
+            //Timings and counts for the run report
+            final RunMetrics metrics = new RunMetrics();
+            long phaseStart;
+            long phaseCpu;
+
+            //Stream generated sources into a single archive instead of a file each
+            ArchiveOutputSink archiveSink = null;
+            OutputSink outputSink = null;
+            if (launchSettings.containsKey("outputArchive") && launchSettings.containsKey("compile") && launchSettings.containsKey("noSourceOutput"))
+            {
+                warn("-outputArchive is ignored as -noSourceOutput skips writing the sources");
+            }
+            else if (launchSettings.containsKey("outputArchive"))
+            {
+                archiveSink = new ArchiveOutputSink(Utils.getFile(runFolder, launchSettings.get("outputArchive")));
+                outputSink = archiveSink;
+            }
+
+            //Keep generated sources in memory so they can be compiled without reading the output folder
+            CompilingOutputSink compileSink = null;
+            if (launchSettings.containsKey("compile"))
+            {
+                OutputSink sourceSink = archiveSink != null ? archiveSink : new FolderOutputSink(outputFolder);
+                compileSink = new CompilingOutputSink(launchSettings.containsKey("noSourceOutput") ? null : sourceSink);
+                outputSink = compileSink;
+            }
+
+            //Load cache of parsed templates
+            phaseStart = System.nanoTime();
+            phaseCpu = RunMetrics.processCpuTime();
+            TemplateCache templateCache = null;
+            if (launchSettings.containsKey("templateCache"))
+            {
+                templateCache = new TemplateCache(Utils.getFile(runFolder, launchSettings.get("templateCache")));
+                templateCache.load();
+            }
+
+            //Parse each template once and share it between processors
+            final TemplateRegistry templateRegistry = new TemplateRegistry(templateCache);
+            for (File file : templateFolders)
+            {
+                if (library != null)
                 {
-                    error("The template folder '" + file + "' does not exist.");
+                    templateRegistry.addAll(library.getFolder(file));
                 }
                 else
                 {
-                    templateFolders.add(file);
+                    out("Loading templates from " + file);
+                    try
+                    {
+                        templateRegistry.loadFolder(Utils.openFolder(file, archives), 0);
+                    }
+                    catch (IOException e)
+                    {
+                        error("Failed to load templates from " + file, e);
+                    }
                 }
             }
-            if (templateFolders.isEmpty())
+
+            metrics.templateLoad.add(System.nanoTime() - phaseStart, RunMetrics.processCpuTime() - phaseCpu);
+
+            //Processors are created and load their templates the first time a source file has their annotation
+            final OutputSink sink = outputSink;
+            final ProcessorIndex processorIndex = new ProcessorIndex(descriptors, new ProcessorIndex.Loader()
             {
-                error("No template folders were loaded, can not continue as processors will have noting to generate.");
-            }
+                @Override
+                public Processor load(ProcessorDescriptor descriptor)
+                {
+                    return loadProcessor(descriptor, runFolder, launchSettings, templateRegistry, metrics, sink);
+                }
+            });
+            processorIndex.metrics = metrics;
 
-            //Get output folder
-            path = launchSettings.get("output");
-            if (path.startsWith("."))
+            //Watch mode reloads templates of created processors so all are needed up front
+            if (launchSettings.containsKey("watch"))
             {
-                outputFolder = new File(runFolder, path.substring(1, path.length()));
+                processorIndex.createAll();
             }
-            else
+            //Processors of the last run are needed to know which of their templates changed
+            else if (manifest != null && manifest.skipUnchanged && manifest.previous != null)
             {
-                outputFolder = new File(path);
+                final Set<String> previousProcessors = manifest.previous.getSourceProcessors();
+                for (ProcessorDescriptor descriptor : descriptors)
+                {
+                    if (previousProcessors.contains(descriptor.processorClass))
+                    {
+                        processorIndex.getProcessor(descriptor);
+                    }
+                }
             }
 
-            //Ensure we have an output folder
-            if (outputFolder.exists() && !outputFolder.isDirectory())
+            //Record template files so only outputs using changed templates are generated again
+            if (manifest != null)
             {
-                out("output folder is not a directory: " + outputFolder);
-                System.exit(1);
+                recordTemplates(manifest, templateRegistry, processorIndex.getProcessors());
+                if (manifest.skipUnchanged && manifest.previous != null)
+                {
+                    //Marks the affected templates and processors, must run even if nothing is logged
+                    final int changedTemplates = manifest.findChangedTemplates();
+                    out("Template files changed since last run: " + changedTemplates);
+                }
             }
+            metrics.templatesLoaded.addAndGet(templateRegistry.getEntries().size());
+            metrics.templatesParsed.addAndGet(templateCache != null ? templateCache.getMisses() : templateRegistry.getEntries().size());
 
-            if(!outputFolder.exists())
+            if (templateCache != null)
             {
-                outputFolder.mkdirs();
+                out("Template cache: " + templateCache.getHits() + " loaded from cache, " + templateCache.getMisses() + " parsed");
+                try
+                {
+                    templateCache.save();
+                }
+                catch (IOException e)
+                {
+                    warn("Failed to save template cache " + templateCache.file + ". Error: " + e);
+                }
+            }
+
+            //Load classes
+            out("");
+            out("Loading classes from " + targetFolder);
+            phaseStart = System.nanoTime();
+            phaseCpu = RunMetrics.processCpuTime();
+            //Processors created on first use are timed as their own phase and taken out of the scan
+            final long loadStart = metrics.processorLoad.wallNanos.get();
+            final long loadCpu = metrics.processorLoad.cpuNanos.get();
+            if (launchSettings.containsKey("pipeline"))
+            {
+                GeneratorPipeline.create(processorIndex, outputFolder, manifest, launchSettings).run(sourceFolder);
+            }
+            else if (launchSettings.containsKey("threads"))
+            {
+                String threads = launchSettings.get("threads");
+                int threadCount = threads.isEmpty() ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(threads);
+                out("Scanning with " + threadCount + " threads");
+                handleDirectoryParallel(sourceFolder, processorIndex, outputFolder, manifest, threadCount);
             }
             else
             {
-                Utils.cleanFolder(outputFolder);
+                handleDirectory(sourceFolder, processorIndex, outputFolder, manifest, 0);
             }
+            //Process CPU time is coarser than thread CPU time so the difference is kept from going below zero
+            metrics.scan.add(System.nanoTime() - phaseStart - (metrics.processorLoad.wallNanos.get() - loadStart),
+                    Math.max(0, RunMetrics.processCpuTime() - phaseCpu - (metrics.processorLoad.cpuNanos.get() - loadCpu)));
+            out("Skipped " + processorIndex.prefilter.getRejected() + " files without processor annotations");
 
-            //Ensure we have a target source folder
-            if (targetFolder.exists() && targetFolder.isDirectory())
+            out("");
+            out("Finalizing data");
+            phaseStart = System.nanoTime();
+            phaseCpu = RunMetrics.processCpuTime();
+            final Set<String> removedSourceProcessors = manifest != null ? manifest.getRemovedSourceProcessors() : null;
+            final List<Processor> processors = processorIndex.getProcessors();
+            if (processors.isEmpty())
             {
-                out("");
-                //Load processors
-                List<Processor> processors = new ArrayList();
+                out("  No source files used any of the processors");
+            }
+            for (Processor processor : processors)
+            {
+                //Nothing the processor finalizes changed if it generated nothing, lost no sources and has the same templates
+                if (manifest != null && manifest.skipUnchanged && manifest.previous != null && manifest.previous.settingsHash.equals(manifest.settingsHash)
+                        && processor.filesWritten.get() + processor.filesSkipped.get() == 0
+                        && !removedSourceProcessors.contains(processor.getClass().getName())
+                        && !manifest.hasChangedTemplates(processor.getClass().getName()))
+                {
+                    out("  " + processor + ": no changes, skipped finalize");
+                    continue;
+                }
+                processor.finalize(outputFolder);
+                out("  " + processor + ": wrote " + processor.filesWritten + " files, skipped " + processor.filesSkipped + " unchanged files, render cache "
+                        + processor.renderCache.hits + " hits " + processor.renderCache.misses + " misses");
+                metrics.outputsWritten.addAndGet(processor.filesWritten.get());
+                metrics.outputsSkipped.addAndGet(processor.filesSkipped.get());
+            }
+            metrics.finalize.add(System.nanoTime() - phaseStart, RunMetrics.processCpuTime() - phaseCpu);
 
-                String[] processorEntries = launchSettings.get("processors").split(",");
-                for (String processorEntry : processorEntries)
+            //Let sinks write anything they held back
+            if (outputSink != null)
+            {
+                phaseStart = System.nanoTime();
+                phaseCpu = RunMetrics.processCpuTime();
+                try
                 {
-                    try
-                    {
-                        Class clazz = Class.forName(processorEntry);
-                        Processor processor = (Processor) clazz.newInstance();
-                        processor.initialized(runFolder, launchSettings);
-                        processors.add(processor);
-                    }
-                    catch (ClassNotFoundException e)
-                    {
-                        error("Failed to locate processor class " + processorEntry, e);
-                    }
-                    catch (InstantiationException e)
-                    {
-                        error("Failed to create processor object " + processorEntry, e);
-                    }
-                    catch (IllegalAccessException e)
-                    {
-                        error("Failed to access processor class " + processorEntry, e);
-                    }
+                    outputSink.close();
+                }
+                catch (IOException e)
+                {
+                    error("Failed to write generated files", e);
+                }
+                metrics.write.add(System.nanoTime() - phaseStart, RunMetrics.processCpuTime() - phaseCpu);
+                if (archiveSink != null)
+                {
+                    out("Wrote " + archiveSink.size() + " files to " + archiveSink.file + (archiveSink.isChanged() ? "" : ", archive was already up to date"));
                 }
+            }
 
-                //Ensure we have templates to use
-                if (processors.isEmpty())
+            if (manifest != null)
+            {
+                //Include templates of processors created during the scan
+                recordTemplates(manifest, templateRegistry, processors);
+                for (String removed : manifest.pruneStale())
+                {
+                    out("Deleted stale file: " + removed);
+                }
+                try
+                {
+                    manifest.save(manifestFile);
+                }
+                catch (IOException e)
                 {
-                    error("No templates were loaded, can not continue with templates to use");
+                    error("Failed to save build manifest", e);
                 }
+            }
 
-                for (Processor processor : processors)
+            if (compileSink != null)
+            {
+                out("");
+                out("Compiling generated classes");
+                phaseStart = System.nanoTime();
+                phaseCpu = RunMetrics.processCpuTime();
+                try
                 {
-                    out("Initializing processor: " + processor);
-                    for (File file : templateFolders)
+                    boolean compiled = compileSink.compile(Utils.getFile(runFolder, launchSettings.get("compile")), launchSettings.get("compileClasspath"));
+                    metrics.compile.add(System.nanoTime() - phaseStart, RunMetrics.processCpuTime() - phaseCpu);
+                    if (!compiled)
                     {
-                        out("Loading templates from " + file);
-                        processor.loadTemplates(file, 0);
+                        error("Generated classes failed to compile");
                     }
                 }
+                catch (IOException e)
+                {
+                    error("Failed to compile generated classes", e);
+                }
+            }
 
-                //Load classes
-                out("");
-                out("Loading classes from " + targetFolder);
-                handleDirectory(targetFolder, processors, outputFolder, 0);
-
-                out("");
-                out("Finalizing data");
-                for (Processor processor : processors)
+            //Report timings
+            out("");
+            out("Timings: " + metrics.getSummary());
+            if (launchSettings.containsKey("report"))
+            {
+                File reportFile = Utils.getFile(runFolder, launchSettings.get("report"));
+                try
+                {
+                    metrics.writeJson(reportFile, launchSettings);
+                    out("Wrote run report to " + reportFile);
+                }
+                catch (IOException e)
                 {
-                    processor.finalize(outputFolder);
+                    warn("Failed to write run report " + reportFile + ". Error: " + e);
                 }
             }
-            else
+
+            //Keep templates loaded and regenerate as files change
+            if (launchSettings.containsKey("watch") && !archives.isEmpty())
             {
-                error("The target folder does not exist. Folder: " + targetFolder);
+                warn("Archives can not be watched for changes, use extracted folders for watch mode");
             }
-        }
-        else if(!GraphicsEnvironment.isHeadless())
-        {
-            //TODO open java FX app allowing creation of settings files
+            else if (launchSettings.containsKey("watch"))
+            {
+                try
+                {
+                    new WatchDaemon(processorIndex, templateRegistry, templateCache, templateFolders, targetFolder, outputFolder, manifest, manifestFile).run();
+                }
+                catch (IOException e)
+                {
+                    error("Failed to watch folders for changes", e);
+                }
+            }
+            Utils.closeAll(archives);
         }
         else
         {
-            error("In order for the program to function you need to specify in the program arguments: " +
-                    "-src=\"path/to/source/files\" " +
-                    "-templates=\"path/to/source/templates\"" +
-                    " -output=\"path/to/source/output\"");
+            error("The target folder does not exist. Folder: " + targetFolder);
         }
-
-        out("Exiting...");
     }
 
     public static void out(String msg)
     {
-        System.out.println(msg);
+        Log.info(msg);
     }
 
     public static void error(String msg, Throwable t)
     {
-        System.err.println(msg);
-        t.printStackTrace();
+        Log.error(msg, t);
         System.exit(1);
     }
 
     public static void error(String msg)
     {
-        System.err.println(msg);
+        Log.error(msg, null);
         System.exit(1);
     }
 
     public static void warn(String msg)
     {
-        System.err.println(msg);
+        Log.warn(msg);
     }
 
-    public static void handleDirectory(File directory, List<Processor> processors, File outputFolder, int depth)
+    public static void handleDirectory(Path directory, ProcessorIndex processors, File outputFolder, BuildManifest manifest, int depth)
     {
         //Generate spacer to make debug look nice
         String spacer;
@@ -224,103 +585,480 @@ public class Main
         }
         spacer = builder.toString();
 
-        out(spacer + "*Directory: " + directory.getName());
+        if (Log.isDebug())
+        {
+            Log.debug(spacer + "*Directory: " + Utils.getName(directory));
+        }
 
-        File[] files = directory.listFiles();
-        for (File file : files)
+        Path[] files = listFiles(directory);
+        for (Path file : files)
         {
-            if (file.isDirectory())
+            if (Files.isDirectory(file))
             {
-                handleDirectory(file, processors, outputFolder, ++depth);
+                handleDirectory(file, processors, outputFolder, manifest, ++depth);
             }
             else
             {
-                out("");
-                out(spacer + "--File: " + file.getName());
-                out(spacer + " |------------------------->");
+                if (Log.isDebug())
+                {
+                    Log.debug("");
+                    Log.debug(spacer + "--File: " + Utils.getName(file));
+                    Log.debug(spacer + " |------------------------->");
+                }
                 try
                 {
-                    handleFile(file, processors, outputFolder, spacer + " |");
+                    handleFile(file, processors, outputFolder, manifest, spacer + " |");
                 }
                 catch (IOException e)
                 {
                     error("Unexpected exception while parsing " + file, e);
                     System.exit(1);
                 }
-                out(spacer + " |------------------------->");
+                if (Log.isDebug())
+                {
+                    Log.debug(spacer + " |------------------------->");
+                }
             }
         }
     }
 
-    public static void handleFile(File file, List<Processor> allProcessors, File outputFolder, String spacer) throws IOException
+    /**
+     * Scans the directory using a fork join pool. Directory listing and header
+     * parsing happen on worker threads while processors are called on the
+     * current thread in the same order as {@link #handleDirectory(Path, ProcessorIndex, File, BuildManifest, int)}.
+     *
+     * @param directory    - folder to scan
+     * @param processors   - processors to pass parsed files to
+     * @param outputFolder - folder to output generated files to
+     * @param manifest     - manifest for incremental builds, null for a full build
+     * @param threads      - number of worker threads to use
+     */
+    public static void handleDirectoryParallel(Path directory, ProcessorIndex processors, File outputFolder, BuildManifest manifest, int threads)
     {
-        if (file.getAbsolutePath().endsWith(".java"))
+        final List<ClassHeader> headers;
+        final ForkJoinPool pool = new ForkJoinPool(Math.max(1, threads));
+        try
+        {
+            headers = pool.invoke(new ScanTask(directory, processors));
+        }
+        catch (UncheckedIOException e)
         {
-            String fileClassName = file.getName();
-            fileClassName = fileClassName.substring(0, fileClassName.length() - 5);
+            error(e.getMessage(), e.getCause());
+            return;
+        }
+        finally
+        {
+            pool.shutdown();
+        }
 
-            String classPackage = null;
-            List<String> annotations = new ArrayList();
-            BufferedReader br = new BufferedReader(new FileReader(file));
+        for (ClassHeader header : headers)
+        {
+            if (Log.isDebug())
+            {
+                Log.debug("");
+                Log.debug("  --File: " + Utils.getName(header.file));
+                Log.debug("   |------------------------->");
+            }
             try
             {
-                String line;
+                handleHeader(header, processors, outputFolder, manifest, "   |");
+            }
+            catch (IOException e)
+            {
+                error("Unexpected exception while parsing " + header.file, e);
+            }
+            if (Log.isDebug())
+            {
+                Log.debug("   |------------------------->");
+            }
+        }
+    }
+
+    /**
+     * Gets the processors to run. Processors named in the processors setting use the
+     * descriptor found on the classpath if there is one, otherwise they are created
+     * right away to get their annotation and that instance is used once a source needs it.
+     * Without the setting every descriptor found on the classpath is used.
+     *
+     * @param launchSettings - settings of the job
+     * @return descriptors in the order the processors run
+     */
+    public static List<ProcessorDescriptor> loadDescriptors(HashMap<String, String> launchSettings)
+    {
+        final List<ProcessorDescriptor> found = ProcessorDescriptor.discover(Main.class.getClassLoader());
+        final String processorSetting = launchSettings.get("processors");
+        if (processorSetting == null || processorSetting.trim().isEmpty())
+        {
+            return found;
+        }
+
+        final List<ProcessorDescriptor> descriptors = new ArrayList();
+        for (String processorEntry : processorSetting.split(","))
+        {
+            processorEntry = processorEntry.trim();
+            try
+            {
+                descriptors.add(ProcessorDescriptor.find(found, processorEntry, Main.class.getClassLoader()));
+            }
+            catch (ClassNotFoundException e)
+            {
+                error("Failed to locate processor class " + processorEntry, e);
+            }
+            catch (ReflectiveOperationException e)
+            {
+                error("Failed to create processor object " + processorEntry, e);
+            }
+        }
+        return descriptors;
+    }
 
-                while ((line = br.readLine()) != null)
+    /**
+     * Creates the processor, applies the job settings to it and loads its templates
+     *
+     * @param descriptor     - processor to create
+     * @param runFolder      - folder relative paths are resolved against
+     * @param launchSettings - settings of the job
+     * @param registry       - templates of the job
+     * @param metrics        - metrics of the job
+     * @param outputSink     - sink to write generated files to, null to write to the output folder
+     * @return processor
+     */
+    public static Processor loadProcessor(ProcessorDescriptor descriptor, File runFolder, HashMap<String, String> launchSettings, TemplateRegistry registry, RunMetrics metrics, OutputSink outputSink)
+    {
+        final long start = System.nanoTime();
+        final long cpu = RunMetrics.threadCpuTime();
+        try
+        {
+            Processor processor = descriptor.create();
+            if (!processor.annotationKey.equals(descriptor.annotationKey))
+            {
+                warn("Processor " + processor + " uses annotation " + processor.annotationKey + " but was registered for " + descriptor.annotationKey);
+            }
+            processor.initialized(runFolder, launchSettings);
+            if (launchSettings.containsKey("keepUnusedImports"))
+            {
+                processor.removeUnusedImports = false;
+            }
+            if (launchSettings.containsKey("renderCacheSize"))
+            {
+                processor.renderCache.setMaxSize(Integer.parseInt(launchSettings.get("renderCacheSize")));
+            }
+            processor.metrics = metrics;
+            processor.outputSink = outputSink;
+
+            out("Initializing processor: " + processor);
+            if (launchSettings.containsKey("incremental") && !processor.canSkipUpToDate())
+            {
+                out("  Processor has a finalize step and does not handle unchanged files, all of its sources will be generated");
+            }
+            processor.loadTemplates(registry);
+            metrics.processorLoad.add(System.nanoTime() - start, RunMetrics.threadCpuTime() - cpu);
+            return processor;
+        }
+        catch (ClassNotFoundException e)
+        {
+            error("Failed to locate processor class " + descriptor.processorClass, e);
+        }
+        catch (ReflectiveOperationException e)
+        {
+            error("Failed to create processor object " + descriptor.processorClass, e);
+        }
+        return null;
+    }
+
+    /**
+     * Records each template file in the manifest along with the template
+     * references the processors loaded from it
+     *
+     * @param manifest   - manifest of the run
+     * @param registry   - registry the templates were loaded from
+     * @param processors - processors with templates loaded
+     */
+    public static void recordTemplates(BuildManifest manifest, TemplateRegistry registry, List<Processor> processors)
+    {
+        final Map<Path, Set<String>> fileToRefs = new HashMap();
+        for (TemplateRegistry.Entry entry : registry.getEntries())
+        {
+            fileToRefs.put(entry.file, new HashSet());
+        }
+        for (Processor processor : processors)
+        {
+            for (Map.Entry<String, Path> entry : processor.getTemplateFiles().entrySet())
+            {
+                Set<String> refs = fileToRefs.get(entry.getValue());
+                if (refs != null)
                 {
-                    //Ignore all import lines so not to parse {} or @ in imports
-                    if (!line.contains("import"))
-                    {
-                        if (line.contains("package"))
-                        {
-                            final Matcher matcher = packagePattern.matcher(line);
-                            if (matcher.matches())
-                            {
-                                classPackage = matcher.group(1).trim();
-                            }
-                        }
-                        else if (line.contains("@"))
-                        {
-                            annotations.addAll(Parser.getAnnotations(line));
-                        }
-                        //First { should be the end of the class header
-                        else if (line.contains("{"))
-                        {
-                            break;
-                        }
-                    }
+                    refs.add(processor.getTemplateRef(entry.getKey()));
                 }
             }
-            finally
+        }
+        for (Map.Entry<Path, Set<String>> entry : fileToRefs.entrySet())
+        {
+            try
             {
-                br.close();
+                manifest.putTemplate(Utils.getPathKey(entry.getKey()), Utils.hashFile(entry.getKey()), entry.getValue());
             }
+            catch (IOException e)
+            {
+                error("Failed to hash template " + entry.getKey(), e);
+            }
+        }
+    }
 
-            HashMap<String, String> annotationToData = new HashMap();
-            //Debug data
-            out(spacer + "  Package: " + classPackage);
-            out(spacer + "  Annotations:");
+    /**
+     * Lists the contents of a directory sorted by name so
+     * runs are repeatable between file systems.
+     *
+     * @param directory - folder to list
+     * @return sorted files
+     */
+    public static File[] listFiles(File directory)
+    {
+        File[] files = directory.listFiles();
+        if (files == null)
+        {
+            return new File[0];
+        }
+        Arrays.sort(files);
+        return files;
+    }
 
-            //Output annotation and parse
-            for (String string : annotations)
+    /**
+     * Lists the contents of a directory sorted by name so
+     * runs are repeatable between file systems.
+     *
+     * @param directory - folder to list, may be inside an archive
+     * @return sorted paths
+     */
+    public static Path[] listFiles(Path directory)
+    {
+        final List<Path> files = new ArrayList();
+        try
+        {
+            DirectoryStream<Path> stream = Files.newDirectoryStream(directory);
+            try
             {
-                out(spacer + "      " + string);
+                for (Path file : stream)
+                {
+                    files.add(file);
+                }
+            }
+            finally
+            {
+                stream.close();
+            }
+        }
+        catch (IOException e)
+        {
+            warn("Failed to list files in " + directory + ". Error: " + e);
+        }
+        Path[] array = files.toArray(new Path[files.size()]);
+        Arrays.sort(array);
+        return array;
+    }
 
-                int firstParn = string.indexOf("(");
-                String annotation = string.substring(0, firstParn);
-                String data = string.substring(firstParn + 1, string.length() - 1);
-                annotationToData.put(annotation, data);
+    public static void handleFile(Path file, ProcessorIndex allProcessors, File outputFolder, BuildManifest manifest, String spacer) throws IOException
+    {
+        ClassHeader header = readHeader(file, allProcessors);
+        if (header != null)
+        {
+            handleHeader(header, allProcessors, outputFolder, manifest, spacer);
+        }
+    }
+
+    /**
+     * Reads the package and annotations from the top of a source file.
+     * <p>
+     * Does not touch any shared state so is safe to call from worker threads.
+     *
+     * @param file - file to read, may be inside an archive
+     * @return header data, or null if the file is not a java file
+     * @throws IOException
+     */
+    public static ClassHeader readHeader(Path file) throws IOException
+    {
+        return readHeader(file, (AnnotationPrefilter) null);
+    }
+
+    /**
+     * Reads the package and annotations from the top of a source file
+     *
+     * @param file      - file to read, may be inside an archive
+     * @param prefilter - skips files without a processor annotation key, null to read every file
+     * @return header data, or null if the file is not a java file or was rejected
+     * @throws IOException
+     */
+    public static ClassHeader readHeader(Path file, AnnotationPrefilter prefilter) throws IOException
+    {
+        if (file.toString().endsWith(".java"))
+        {
+            return HeaderScanner.scan(file, prefilter);
+        }
+        return null;
+    }
+
+    /**
+     * Reads the header of the file using the prefilter of the processors, recording the time and bytes read
+     *
+     * @param file       - file to read
+     * @param processors - processors the file is read for, null to read without a prefilter
+     * @return header data, or null if the file is not a java file or has no processor annotation
+     * @throws IOException
+     */
+    public static ClassHeader readHeader(Path file, ProcessorIndex processors) throws IOException
+    {
+        if (processors == null)
+        {
+            return readHeader(file);
+        }
+        final RunMetrics metrics = processors.metrics;
+        if (metrics == null || !file.toString().endsWith(".java"))
+        {
+            return readHeader(file, processors.prefilter);
+        }
+        final long start = System.nanoTime();
+        final long cpu = RunMetrics.threadCpuTime();
+        final ClassHeader header = readHeader(file, processors.prefilter);
+        metrics.headerParse.add(System.nanoTime() - start, RunMetrics.threadCpuTime() - cpu);
+        metrics.filesScanned.incrementAndGet();
+        if (header != null)
+        {
+            metrics.bytesRead.addAndGet(header.bytesRead);
+        }
+        else
+        {
+            metrics.filesRejected.incrementAndGet();
+        }
+        return header;
+    }
+
+    /**
+     * Passes the parsed header to all processors that match its annotations
+     *
+     * @param header        - header read from the file
+     * @param allProcessors - index of processors by annotation
+     * @param outputFolder  - folder to output generated files to
+     * @param manifest      - manifest for incremental builds, null for a full build
+     * @param spacer        - spacer for debug output
+     * @throws IOException
+     */
+    public static void handleHeader(ClassHeader header, ProcessorIndex allProcessors, File outputFolder, BuildManifest manifest, String spacer) throws IOException
+    {
+        //Debug data
+        final boolean debug = Log.isDebug();
+        if (debug)
+        {
+            Log.debug(spacer + "  Package: " + header.classPackage);
+            Log.debug(spacer + "  Annotations:");
+        }
+
+        //Split annotations into name and data
+        final List<String> names = new ArrayList(header.annotations.size());
+        for (String string : header.annotations)
+        {
+            if (debug)
+            {
+                Log.debug(spacer + "      " + string);
             }
+            names.add(string.substring(0, string.indexOf("(")));
+        }
+
+        //Find processors, skip files that are not for any processor
+        final List<Processor> processors = allProcessors.collect(names);
+        if (processors.isEmpty())
+        {
+            return;
+        }
+
+        final HashMap<String, String> annotationToData = getAnnotationData(header);
 
-            for (Processor processor : allProcessors)
+        //Skip files that have not changed since the last run, processors still see them so finalize has every file
+        BuildManifest.Entry entry = null;
+        if (manifest != null)
+        {
+            //Hashing reads the file again, only incremental runs compare the hash
+            String sourceKey = manifest.getSourceKey(header.file);
+            String sourceHash = manifest.skipUnchanged ? Utils.hashFile(header.file) : "";
+            if (manifest.skipUnchanged && canSkipUpToDate(processors) && manifest.checkUpToDate(sourceKey, sourceHash))
             {
-                if (annotationToData.containsKey(processor.annotationKey))
+                if (debug)
+                {
+                    Log.debug(spacer + "  Unchanged since last run, skipping");
+                }
+                for (Processor processor : processors)
+                {
+                    processor.handleUpToDateFile(outputFolder, new BuildData(annotationToData, header.classPackage, header.className), spacer);
+                }
+                if (allProcessors.metrics != null)
                 {
-                    processor.handleFile(outputFolder, new BuildData(annotationToData, classPackage, fileClassName), spacer);
+                    allProcessors.metrics.sourcesSkipped.incrementAndGet();
                 }
+                return;
+            }
+            entry = new BuildManifest.Entry(sourceKey, sourceHash);
+        }
+
+        final long start = System.nanoTime();
+        for (Processor processor : processors)
+        {
+            BuildData buildData = new BuildData(annotationToData, header.classPackage, header.className);
+            try
+            {
+                processor.handleFile(outputFolder, buildData, spacer);
+            }
+            catch (UncheckedIOException e)
+            {
+                //Writes fail unchecked as build does not throw
+                throw new IOException(e.getMessage(), e.getCause());
+            }
+
+            //Record outputs for the next run
+            if (entry != null)
+            {
+                entry.processors.add(processor.getClass().getName());
+                entry.outputs.putAll(buildData.outputFiles);
+                entry.outputTemplates.putAll(buildData.outputTemplates);
+            }
+        }
+        if (entry != null)
+        {
+            manifest.put(entry);
+        }
+        if (allProcessors.metrics != null)
+        {
+            allProcessors.metrics.sourcesGenerated.incrementAndGet();
+            allProcessors.metrics.recordFile(header.file, System.nanoTime() - start);
+        }
+        //TODO build list of all generated data to be registered
+    }
+
+    /**
+     * Splits the annotations of the header into name and the text between the ( )
+     *
+     * @param header - header read from the file
+     * @return annotation name to data
+     */
+    public static HashMap<String, String> getAnnotationData(ClassHeader header)
+    {
+        final HashMap<String, String> annotationToData = new HashMap();
+        for (String string : header.annotations)
+        {
+            final int start = string.indexOf("(");
+            annotationToData.put(string.substring(0, start), string.substring(start + 1, string.length() - 1));
+        }
+        return annotationToData;
+    }
+
+    private static boolean canSkipUpToDate(List<Processor> processors)
+    {
+        for (Processor processor : processors)
+        {
+            if (!processor.canSkipUpToDate())
+            {
+                return false;
             }
-            //TODO build list of all generated data to be registered
         }
+        return true;
     }
 
 
@@ -354,7 +1092,7 @@ public class Main
 
                     if (next.contains("="))
                     {
-                        String[] split = next.split("=");
+                        String[] split = next.split("=", 2);
                         currentArg = split[0].substring(1).trim();
                         currentValue = split[1].trim();
                     }
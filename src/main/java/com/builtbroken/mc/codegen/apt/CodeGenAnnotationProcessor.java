@@ -0,0 +1,353 @@
+package com.builtbroken.mc.codegen.apt;
+
+import com.builtbroken.mc.codegen.data.BuildData;
+import com.builtbroken.mc.codegen.output.FilerOutputSink;
+import com.builtbroken.mc.codegen.processor.Processor;
+import com.builtbroken.mc.codegen.processor.ProcessorDescriptor;
+import com.builtbroken.mc.codegen.processor.ProcessorIndex;
+import com.builtbroken.mc.codegen.template.TemplateCache;
+import com.builtbroken.mc.codegen.template.TemplateRegistry;
+import com.builtbroken.mc.codegen.utils.Utils;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileSystem;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Runs the code generator processors from inside javac as an annotation processor.
+ * <p>
+ * Instead of scanning the source folder each class javac parses is checked for the
+ * processor annotations, the {@link BuildData} is created from the element model and
+ * the output is written through the {@link javax.annotation.processing.Filer} so it
+ * is compiled in the same run.
+ * <p>
+ * Options, passed to javac with -A:<br>
+ * codegen.processors - comma separated list of processor classes, defaults to all registered
+ * {@link ProcessorDescriptor}s<br>
+ * codegen.templates - comma separated list of template folders or jar/zip archives<br>
+ * codegen.templateCache - optional file to cache parsed templates in<br>
+ * codegen.output - folder passed to the processors, defaults to the javac generated source folder. Sources are
+ * always written through the Filer, the folder is for other files written by {@link Processor#finalize(File)}<br>
+ * Other codegen. options are passed to {@link Processor#initialized(File, HashMap)} without the prefix,
+ * processors list the ones they read in {@link Processor#getSupportedSettings()} so javac accepts them.
+ * <p>
+ * Failures are reported through the {@link javax.annotation.processing.Messager} so they fail the
+ * compile instead of ending the javac process.
+ *
+ * @see <a href="https://github.com/BuiltBrokenModding/VoltzEngine/blob/development/license.md">License</a> for what you can and can't do with the code.
+ */
+public class CodeGenAnnotationProcessor extends AbstractProcessor
+{
+    public static final String OPTION_PREFIX = "codegen.";
+
+    private ProcessorIndex processorIndex;
+    private File outputFolder;
+    /** Template archives, open until processing is over */
+    private final List<FileSystem> archives = new ArrayList();
+    /** Options declared by the loaded processors, with the prefix */
+    private final Set<String> processorOptions = new HashSet();
+
+    @Override
+    public synchronized void init(ProcessingEnvironment processingEnv)
+    {
+        super.init(processingEnv);
+
+        //Load settings
+        final HashMap<String, String> settings = new HashMap();
+        for (Map.Entry<String, String> entry : processingEnv.getOptions().entrySet())
+        {
+            if (entry.getKey().startsWith(OPTION_PREFIX))
+            {
+                settings.put(entry.getKey().substring(OPTION_PREFIX.length()), entry.getValue() != null ? entry.getValue() : "");
+            }
+        }
+        if (!settings.containsKey("templates"))
+        {
+            //Registered as a service so it runs for any compile with the jar on the class path, only warn if it was meant to run
+            if (!settings.isEmpty())
+            {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, "Code generator needs -A" + OPTION_PREFIX + "templates, skipping generation");
+            }
+            return;
+        }
+
+        final File runFolder = new File(".");
+        outputFolder = settings.containsKey("output") ? Utils.getFile(runFolder, settings.get("output")) : getSourceOutputFolder(runFolder);
+
+        //Find processors, registered descriptors are used unless a list is given
+        final ClassLoader classLoader = getClass().getClassLoader();
+        final List<ProcessorDescriptor> found = ProcessorDescriptor.discover(classLoader);
+        final List<ProcessorDescriptor> descriptors = new ArrayList();
+        final String processorSetting = settings.get("processors");
+        if (processorSetting == null || processorSetting.trim().isEmpty())
+        {
+            descriptors.addAll(found);
+        }
+        else
+        {
+            for (String processorEntry : processorSetting.split(","))
+            {
+                try
+                {
+                    descriptors.add(ProcessorDescriptor.find(found, processorEntry.trim(), classLoader));
+                }
+                catch (ReflectiveOperationException e)
+                {
+                    processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Failed to create code generator processor " + processorEntry.trim() + ". Error: " + e);
+                    return;
+                }
+            }
+        }
+        if (descriptors.isEmpty())
+        {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, "No code generator processors were found, set -A" + OPTION_PREFIX + "processors or register a processor descriptor");
+            return;
+        }
+
+        //Processors are created now as javac reads their options right after init, templates are loaded on first use
+        final FilerOutputSink sink = new FilerOutputSink(processingEnv.getFiler(), processingEnv.getElementUtils());
+        final Map<ProcessorDescriptor, Processor> processors = new HashMap();
+        for (ProcessorDescriptor descriptor : descriptors)
+        {
+            try
+            {
+                Processor processor = descriptor.create();
+                processor.initialized(runFolder, settings);
+                processor.outputSink = sink;
+                processors.put(descriptor, processor);
+                for (String setting : processor.getSupportedSettings())
+                {
+                    processorOptions.add(OPTION_PREFIX + setting);
+                }
+            }
+            catch (ReflectiveOperationException e)
+            {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Failed to create code generator processor " + descriptor.processorClass + ". Error: " + e);
+                return;
+            }
+        }
+
+        //Load templates
+        TemplateCache templateCache = null;
+        if (settings.containsKey("templateCache"))
+        {
+            templateCache = new TemplateCache(Utils.getFile(runFolder, settings.get("templateCache")));
+            templateCache.load();
+        }
+        final TemplateRegistry registry = new TemplateRegistry(templateCache);
+        for (String path : settings.get("templates").split(","))
+        {
+            final File folder = Utils.getFile(runFolder, path.trim());
+            try
+            {
+                registry.loadFolder(Utils.openFolder(folder, archives), 0);
+            }
+            catch (IOException e)
+            {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Failed to load code generator templates from " + folder + ". Error: " + e);
+                Utils.closeAll(archives);
+                return;
+            }
+        }
+        if (templateCache != null)
+        {
+            try
+            {
+                templateCache.save();
+            }
+            catch (IOException e)
+            {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, "Failed to save code generator template cache " + templateCache.file + ". Error: " + e);
+            }
+        }
+
+        processorIndex = new ProcessorIndex(descriptors, new ProcessorIndex.Loader()
+        {
+            @Override
+            public Processor load(ProcessorDescriptor descriptor)
+            {
+                final Processor processor = processors.get(descriptor);
+                processor.loadTemplates(registry);
+                return processor;
+            }
+        });
+    }
+
+    /**
+     * Gets the folder javac writes generated sources to, used as the output
+     * folder when -A{@value #OPTION_PREFIX}output is not set
+     *
+     * @param runFolder - folder used if the location is not on disk
+     * @return folder
+     */
+    protected File getSourceOutputFolder(File runFolder)
+    {
+        try
+        {
+            final FileObject probe = processingEnv.getFiler().getResource(StandardLocation.SOURCE_OUTPUT, "", "codegen");
+            final File folder = new File(probe.toUri()).getParentFile();
+            if (folder != null)
+            {
+                return folder;
+            }
+        }
+        catch (IOException e)
+        {
+            //Location could not be resolved
+        }
+        catch (IllegalArgumentException e)
+        {
+            //Not a file on disk, such as an in memory file manager
+        }
+        return runFolder;
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv)
+    {
+        if (processorIndex == null)
+        {
+            return false;
+        }
+
+        for (Element element : roundEnv.getRootElements())
+        {
+            if (element instanceof TypeElement)
+            {
+                try
+                {
+                    handleType((TypeElement) element);
+                }
+                catch (IOException e)
+                {
+                    processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Failed to generate code. Error: " + e, element);
+                }
+                catch (UncheckedIOException e)
+                {
+                    processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Failed to generate code. Error: " + e.getMessage() + ", " + e.getCause(), element);
+                }
+            }
+        }
+
+        if (roundEnv.processingOver())
+        {
+            for (Processor processor : processorIndex.getProcessors())
+            {
+                try
+                {
+                    processor.finalize(outputFolder);
+                }
+                catch (UncheckedIOException e)
+                {
+                    processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Failed to finalize code generator processor " + processor + ". Error: " + e.getMessage() + ", " + e.getCause());
+                }
+            }
+            //Templates are read from the archives until the last processor is loaded
+            Utils.closeAll(archives);
+        }
+        //Annotations are matched by name and may be used by other processors
+        return false;
+    }
+
+    /**
+     * Passes the class to the processors for its annotations
+     *
+     * @param type - class to handle
+     * @throws IOException
+     */
+    protected void handleType(TypeElement type) throws IOException
+    {
+        //Annotation name to the text between the ( ) as it would be in the source
+        final HashMap<String, String> annotationToData = new HashMap();
+        for (AnnotationMirror mirror : type.getAnnotationMirrors())
+        {
+            final String name = mirror.getAnnotationType().asElement().getSimpleName().toString();
+            annotationToData.put(name, getAnnotationData(mirror));
+        }
+
+        final List<Processor> processors = processorIndex.collect(annotationToData.keySet());
+        if (processors.isEmpty())
+        {
+            return;
+        }
+
+        final String classPackage = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+        for (Processor processor : processors)
+        {
+            BuildData buildData = new BuildData(annotationToData, classPackage, type.getSimpleName().toString());
+            processor.handleFile(outputFolder, buildData, "");
+        }
+    }
+
+    /**
+     * Converts the values of the annotation back into source form, the
+     * same text the source scan passes to processors
+     *
+     * @param mirror - annotation
+     * @return values separated by commas
+     */
+    protected String getAnnotationData(AnnotationMirror mirror)
+    {
+        final Map<? extends ExecutableElement, ? extends AnnotationValue> values = mirror.getElementValues();
+        final StringBuilder builder = new StringBuilder();
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : values.entrySet())
+        {
+            final String name = entry.getKey().getSimpleName().toString();
+            if (builder.length() > 0)
+            {
+                builder.append(", ");
+            }
+            //A lone value element is normally written without its name
+            if (!(values.size() == 1 && name.equals("value")))
+            {
+                builder.append(name);
+                builder.append(" = ");
+            }
+            builder.append(entry.getValue());
+        }
+        return builder.toString();
+    }
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes()
+    {
+        //Processors match annotations by simple name so every class needs to be checked
+        return Collections.singleton("*");
+    }
+
+    @Override
+    public Set<String> getSupportedOptions()
+    {
+        final Set<String> options = new HashSet(Arrays.asList(OPTION_PREFIX + "processors", OPTION_PREFIX + "templates", OPTION_PREFIX + "templateCache", OPTION_PREFIX + "output"));
+        //javac asks after init so the processors are loaded
+        options.addAll(processorOptions);
+        return options;
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion()
+    {
+        return SourceVersion.latestSupported();
+    }
+}
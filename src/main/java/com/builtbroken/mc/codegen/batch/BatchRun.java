@@ -0,0 +1,283 @@
+package com.builtbroken.mc.codegen.batch;
+
+import com.builtbroken.mc.codegen.Main;
+import com.builtbroken.mc.codegen.template.TemplateCache;
+import com.builtbroken.mc.codegen.template.TemplateLibrary;
+import com.builtbroken.mc.codegen.utils.Utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs several generator jobs described by a settings file in one process.
+ * <p>
+ * The settings file is a properties file. The jobs key lists the job names, keys
+ * starting with a job name and a dot are settings for that job and all other keys
+ * are defaults used by every job. Arguments given on the command line are also used
+ * as defaults. Paths starting with . are relative to the folder of the settings file.
+ * <pre>
+ * jobs=core,items
+ * processors=com.example.TileProcessor
+ * templates=./templates
+ * core.src=./core/src/main/java
+ * core.output=./core/src/generated/java
+ * items.src=./items/src/main/java
+ * items.output=./items/src/generated/java
+ * </pre>
+ * Without a processors setting a job uses every processor found through
+ * {@link com.builtbroken.mc.codegen.processor.ProcessorDescriptor} services.
+ * Template folders used by more than one job are only loaded once. Jobs run at the
+ * same time unless their output folders overlap, in which case a job waits for the
+ * jobs listed before it that share the folder.
+ *
+ * @see <a href="https://github.com/BuiltBrokenModding/VoltzEngine/blob/development/license.md">License</a> for what you can and can't do with the code.
+ */
+public class BatchRun
+{
+    /** Folder relative paths are resolved against */
+    public final File runFolder;
+    /** Jobs in the order they are listed */
+    public final List<Job> jobs = new ArrayList();
+
+    public BatchRun(File runFolder)
+    {
+        this.runFolder = runFolder;
+    }
+
+    /**
+     * Loads the jobs from a settings file
+     *
+     * @param file     - settings file
+     * @param defaults - settings used when neither the job nor the file sets them
+     * @return batch run
+     * @throws IOException
+     */
+    public static BatchRun load(File file, HashMap<String, String> defaults) throws IOException
+    {
+        final Properties properties = new Properties();
+        InputStream in = new FileInputStream(file);
+        try
+        {
+            properties.load(in);
+        }
+        finally
+        {
+            in.close();
+        }
+
+        final BatchRun run = new BatchRun(file.getAbsoluteFile().getParentFile());
+
+        final String jobList = properties.getProperty("jobs");
+        if (jobList == null || jobList.trim().isEmpty())
+        {
+            throw new IOException("Settings file " + file + " does not list any jobs");
+        }
+        final String[] names = jobList.split(",");
+
+        //Settings shared by all jobs
+        final HashMap<String, String> shared = new HashMap(defaults);
+        shared.remove("settings");
+        for (String key : properties.stringPropertyNames())
+        {
+            if (!key.equals("jobs") && !isJobKey(key, names))
+            {
+                shared.put(key, properties.getProperty(key));
+            }
+        }
+
+        for (String name : names)
+        {
+            name = name.trim();
+            final HashMap<String, String> settings = new HashMap(shared);
+            for (String key : properties.stringPropertyNames())
+            {
+                if (key.startsWith(name + "."))
+                {
+                    settings.put(key.substring(name.length() + 1), properties.getProperty(key));
+                }
+            }
+            run.jobs.add(new Job(name, settings));
+        }
+        return run;
+    }
+
+    private static boolean isJobKey(String key, String[] names)
+    {
+        for (String name : names)
+        {
+            if (key.startsWith(name.trim() + "."))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Runs all jobs, blocking until they are done
+     *
+     * @param threads - max number of jobs to run at the same time
+     */
+    public void run(int threads)
+    {
+        //Check settings before starting anything
+        for (Job job : jobs)
+        {
+            for (String key : new String[]{"src", "templates", "output"})
+            {
+                if (!job.settings.containsKey(key))
+                {
+                    Main.error("Job '" + job.name + "' is missing the " + key + " setting");
+                }
+            }
+            if (job.settings.remove("watch") != null)
+            {
+                Main.warn("Job '" + job.name + "' has the watch setting, watch mode is not supported for settings files and will be ignored");
+            }
+            job.outputFolder = getFile(job.settings.get("output"));
+        }
+
+        //Templates are parsed once for all jobs
+        TemplateCache templateCache = null;
+        for (Job job : jobs)
+        {
+            String cacheFile = job.settings.remove("templateCache");
+            if (cacheFile != null && templateCache == null)
+            {
+                templateCache = new TemplateCache(Utils.getFile(runFolder, cacheFile));
+                templateCache.load();
+            }
+        }
+        final TemplateLibrary library = new TemplateLibrary(templateCache);
+
+        final long start = System.currentTimeMillis();
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, jobs.size())));
+        try
+        {
+            //Jobs are started in order, a job waits on earlier jobs that write to the same folder
+            final Map<Job, Future<?>> futures = new HashMap();
+            for (final Job job : jobs)
+            {
+                final List<Future<?>> waitFor = new ArrayList();
+                for (Job other : futures.keySet())
+                {
+                    if (job.overlaps(other))
+                    {
+                        Main.out("Job '" + job.name + "' shares its output folder with '" + other.name + "' and will wait for it");
+                        waitFor.add(futures.get(other));
+                    }
+                }
+                futures.put(job, executor.submit(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        for (Future<?> future : waitFor)
+                        {
+                            waitFor(future);
+                        }
+                        Main.out("");
+                        Main.out("Starting job '" + job.name + "'");
+                        Main.runJob(runFolder, job.settings, library);
+                        Main.out("Finished job '" + job.name + "'");
+                    }
+                }));
+            }
+            for (Job job : jobs)
+            {
+                waitFor(futures.get(job));
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+        library.close();
+
+        if (templateCache != null)
+        {
+            try
+            {
+                templateCache.save();
+            }
+            catch (IOException e)
+            {
+                Main.warn("Failed to save template cache " + templateCache.file + ". Error: " + e);
+            }
+        }
+        Main.out("Ran " + jobs.size() + " jobs using " + library.size() + " template folders in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    private static void waitFor(Future<?> future)
+    {
+        try
+        {
+            future.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        catch (ExecutionException e)
+        {
+            Main.error("Job failed", e.getCause());
+        }
+    }
+
+    /** Resolves the path the same way as {@link Main#runJob(File, HashMap, TemplateLibrary)} */
+    private File getFile(String path)
+    {
+        File file = path.startsWith(".") ? new File(runFolder, path.substring(1)) : new File(path);
+        try
+        {
+            return file.getCanonicalFile();
+        }
+        catch (IOException e)
+        {
+            return file.getAbsoluteFile();
+        }
+    }
+
+    /**
+     * Single generator run, the same settings as passed on the command line
+     */
+    public static class Job
+    {
+        public final String name;
+        public final HashMap<String, String> settings;
+
+        /** Resolved output folder, set before running */
+        File outputFolder;
+
+        public Job(String name, HashMap<String, String> settings)
+        {
+            this.name = name;
+            this.settings = settings;
+        }
+
+        /**
+         * Checks if the output folders are the same or one is inside the other
+         *
+         * @param other - job to check against
+         * @return true if the jobs can not run at the same time
+         */
+        public boolean overlaps(Job other)
+        {
+            final String a = outputFolder.getPath() + File.separator;
+            final String b = other.outputFolder.getPath() + File.separator;
+            return a.startsWith(b) || b.startsWith(a);
+        }
+    }
+}
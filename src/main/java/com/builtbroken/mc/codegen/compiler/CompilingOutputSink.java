@@ -0,0 +1,149 @@
+package com.builtbroken.mc.codegen.compiler;
+
+import com.builtbroken.mc.codegen.Main;
+import com.builtbroken.mc.codegen.data.GeneratedFile;
+import com.builtbroken.mc.codegen.output.OutputSink;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Keeps generated sources in memory and compiles them in process with {@link JavaCompiler}.
+ * <p>
+ * Files are passed on to the wrapped sink, if any, so sources can still be written to disk.
+ * Without a wrapped sink nothing but the class files touch the disk.
+ *
+ * @see <a href="https://github.com/BuiltBrokenModding/VoltzEngine/blob/development/license.md">License</a> for what you can and can't do with the code.
+ */
+public class CompilingOutputSink implements OutputSink
+{
+    /** Sink to pass files to, null to keep sources only in memory */
+    public final OutputSink delegate;
+
+    private final List<GeneratedFile> files = Collections.synchronizedList(new ArrayList<GeneratedFile>());
+
+    public CompilingOutputSink(OutputSink delegate)
+    {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public boolean write(GeneratedFile file) throws IOException
+    {
+        files.add(file);
+        return delegate == null || delegate.write(file);
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        if (delegate != null)
+        {
+            delegate.close();
+        }
+    }
+
+    /**
+     * Compiles all collected sources. The class folder is on the classpath so classes
+     * compiled by earlier runs resolve when an incremental run only generated some of them.
+     *
+     * @param classFolder - folder to write class files to
+     * @param classpath   - classpath to compile against, null to use the current classpath
+     * @return true if compiled without errors
+     * @throws IOException if no compiler is available or the class files could not be written
+     */
+    public boolean compile(File classFolder, String classpath) throws IOException
+    {
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null)
+        {
+            throw new IOException("No java compiler found, compiling generated classes requires running on a JDK");
+        }
+        if (files.isEmpty())
+        {
+            return true;
+        }
+        if (!classFolder.exists())
+        {
+            classFolder.mkdirs();
+        }
+
+        final List<SourceObject> sources = new ArrayList();
+        synchronized (files)
+        {
+            for (GeneratedFile file : files)
+            {
+                sources.add(new SourceObject(file));
+            }
+        }
+
+        final List<String> options = new ArrayList();
+        options.add("-classpath");
+        options.add((classpath != null ? classpath : System.getProperty("java.class.path")) + File.pathSeparator + classFolder.getPath());
+
+        final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector();
+        final StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null, null);
+        try
+        {
+            fileManager.setLocation(StandardLocation.CLASS_OUTPUT, Collections.singletonList(classFolder));
+            final boolean success = compiler.getTask(null, fileManager, diagnostics, options, null, sources).call();
+
+            for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics())
+            {
+                String message = diagnostic.getKind() + ": " + diagnostic.getMessage(null);
+                if (diagnostic.getSource() instanceof SourceObject)
+                {
+                    GeneratedFile file = ((SourceObject) diagnostic.getSource()).file;
+                    message = file.className + ":" + diagnostic.getLineNumber() + " (source " + file.sourceClass
+                            + ", templates " + file.templateKeys + ") " + message;
+                }
+                if (diagnostic.getKind() == Diagnostic.Kind.ERROR)
+                {
+                    Main.warn(message);
+                }
+                else
+                {
+                    Main.out(message);
+                }
+            }
+            Main.out("Compiled " + sources.size() + " generated classes to " + classFolder + (success ? "" : " with errors"));
+            return success;
+        }
+        finally
+        {
+            fileManager.close();
+        }
+    }
+
+    /**
+     * Source file read from memory
+     */
+    private static class SourceObject extends SimpleJavaFileObject
+    {
+        final GeneratedFile file;
+
+        SourceObject(GeneratedFile file)
+        {
+            super(URI.create("string:///" + file.path), Kind.SOURCE);
+            this.file = file;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors)
+        {
+            return file.content;
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package com.builtbroken.mc.codegen.data;
 
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Data about a single file build process
@@ -22,6 +25,17 @@ public class BuildData
     /** Class package of the output file */
     public String outputClassPackage;
 
+    /** Paths of files written for this build, relative to the output folder, to the hash of their content */
+    public final Map<String, String> outputFiles = new LinkedHashMap();
+    /** Paths of files written for this build to the template references used to build them */
+    public final Map<String, Set<String>> outputTemplates = new LinkedHashMap();
+
+    /** Template parts shared with other outputs using the same templates, null if not cached */
+    public RenderedTemplates renderedTemplates;
+
+    /** Identifiers used by the output class, null if unused imports are kept */
+    public Set<String> referencedNames;
+
     public BuildData(HashMap<String, String> annotationToData, String classPackage, String className)
     {
         this.annotations = annotationToData;
@@ -0,0 +1,558 @@
+package com.builtbroken.mc.codegen.data;
+
+import com.builtbroken.mc.codegen.Main;
+import com.builtbroken.mc.codegen.utils.Utils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Record of what a previous run generated, used for incremental builds. Pruned builds
+ * use it to find outputs that are no longer generated instead of cleaning the output
+ * folder, so unchanged outputs are left untouched. Sources are only hashed for incremental
+ * builds, entries from other runs have no hash and are generated again by the next one.
+ * <p>
+ * Maps each source file to the outputs it produced along with content hashes
+ * of both. Each output also records the template references it was built from,
+ * a reference being the processor class and template key, and each template file
+ * records its hash and the references loaded from it. Together these form a reverse
+ * index from template file to template key to outputs, so a changed template only
+ * regenerates the outputs that used it. A template key that was not loaded last run
+ * regenerates every source of its processor, as sources may have asked for it before
+ * it existed. The manifest is only valid for the processors and settings it was built
+ * with, if those change everything is regenerated.
+ * <p>
+ * During a run a new manifest is filled in while the manifest of the last run
+ * is used to decide what can be skipped and what needs to be removed.
+ * <p>
+ * Stored as a tab separated text file next to the output folder so it is not
+ * mistaken for a generated file, see {@link #getDefaultFile(File)}. Methods are
+ * synchronized as the pipeline generates files on several threads.
+ *
+ * @see <a href="https://github.com/BuiltBrokenModding/VoltzEngine/blob/development/license.md">License</a> for what you can and can't do with the code.
+ */
+public class BuildManifest
+{
+    public static final String FILE_NAME = ".codegen-manifest";
+
+    /** Folder sources are stored relative to, may be the root of an archive */
+    public final Path sourceFolder;
+    /** Folder outputs are stored relative to */
+    public final File outputFolder;
+    /** Hash of the processors and settings used for the run */
+    public final String settingsHash;
+
+    /** Source path to entry */
+    protected final Map<String, Entry> sources = new TreeMap();
+    /** Template file path to the hash and references loaded from it */
+    protected final Map<String, TemplateEntry> templates = new TreeMap();
+
+    /** Template references whose template file changed since the previous run */
+    protected final Set<String> changedRefs = new HashSet();
+    /** Processors that gained a template key since the previous run */
+    protected final Set<String> changedProcessors = new HashSet();
+
+    /** Manifest from the last run, null if there is none */
+    public BuildManifest previous;
+    /** True to skip sources that did not change since the last run, false for a full build that only uses the last run to remove stale outputs */
+    public boolean skipUnchanged = true;
+
+    public BuildManifest(Path sourceFolder, File outputFolder, String settingsHash)
+    {
+        this.sourceFolder = sourceFolder;
+        this.outputFolder = outputFolder;
+        this.settingsHash = settingsHash;
+    }
+
+    /**
+     * Gets the default manifest file for the output folder
+     *
+     * @param outputFolder - folder generated files are written to
+     * @return file named after the output folder in its parent folder
+     */
+    public static File getDefaultFile(File outputFolder)
+    {
+        final File folder = outputFolder.getAbsoluteFile();
+        return new File(folder.getParentFile(), folder.getName() + FILE_NAME);
+    }
+
+    /**
+     * Records a template file and compares it against the previous run
+     *
+     * @param path - absolute path of the template file
+     * @param hash - hash of the file content
+     * @param refs - template references loaded from the file
+     */
+    public synchronized void putTemplate(String path, String hash, Set<String> refs)
+    {
+        templates.put(path, new TemplateEntry(path, hash, refs));
+    }
+
+    /**
+     * Finds the template references and processors affected by template changes
+     * since the previous run. Call after all templates are recorded.
+     *
+     * @return number of template files that changed, were added or removed
+     */
+    public synchronized int findChangedTemplates()
+    {
+        changedRefs.clear();
+        changedProcessors.clear();
+        if (previous == null)
+        {
+            return 0;
+        }
+
+        int changedFiles = 0;
+        final Set<String> paths = new HashSet(templates.keySet());
+        paths.addAll(previous.templates.keySet());
+        for (String path : paths)
+        {
+            final TemplateEntry current = templates.get(path);
+            final TemplateEntry old = previous.templates.get(path);
+            if (current == null || old == null || !current.hash.equals(old.hash))
+            {
+                changedFiles++;
+                if (current != null)
+                {
+                    changedRefs.addAll(current.refs);
+                }
+                if (old != null)
+                {
+                    changedRefs.addAll(old.refs);
+                }
+            }
+        }
+
+        //Template keys that did not exist may have been asked for by any source of the processor
+        final Set<String> oldRefs = new HashSet();
+        for (TemplateEntry entry : previous.templates.values())
+        {
+            oldRefs.addAll(entry.refs);
+        }
+        for (TemplateEntry entry : templates.values())
+        {
+            for (String ref : entry.refs)
+            {
+                if (!oldRefs.contains(ref))
+                {
+                    changedProcessors.add(getProcessor(ref));
+                }
+            }
+        }
+        return changedFiles;
+    }
+
+    /**
+     * Checks if the processor has templates that changed since the previous run
+     *
+     * @param processor - class name of the processor
+     * @return true if any template used by the processor changed
+     */
+    public synchronized boolean hasChangedTemplates(String processor)
+    {
+        if (changedProcessors.contains(processor))
+        {
+            return true;
+        }
+        for (String ref : changedRefs)
+        {
+            if (getProcessor(ref).equals(processor))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the template references that changed since the previous run
+     *
+     * @return references
+     */
+    public synchronized Set<String> getChangedRefs()
+    {
+        return new HashSet(changedRefs);
+    }
+
+    /**
+     * Creates the reference stored for a template
+     *
+     * @param processor - class name of the processor
+     * @param key       - template key
+     * @return reference
+     */
+    public static String getTemplateRef(String processor, String key)
+    {
+        return processor + "/" + key;
+    }
+
+    private static String getProcessor(String ref)
+    {
+        return ref.substring(0, ref.lastIndexOf('/'));
+    }
+
+    /**
+     * Gets the key used to store the source file
+     *
+     * @param file - source file
+     * @return path relative to the source folder
+     */
+    public String getSourceKey(Path file)
+    {
+        return Utils.getRelativePath(sourceFolder, file);
+    }
+
+    /**
+     * Checks if the source file has not changed since the previous manifest
+     * was saved, none of the templates its outputs used changed and that all
+     * of its outputs still exist unmodified. If so the entry is carried over
+     * to this manifest.
+     *
+     * @param sourceKey  - key of the source file
+     * @param sourceHash - current hash of the source file
+     * @return true if the outputs do not need to be generated again
+     */
+    public synchronized boolean checkUpToDate(String sourceKey, String sourceHash) throws IOException
+    {
+        if (!skipUnchanged || previous == null || !previous.settingsHash.equals(settingsHash))
+        {
+            return false;
+        }
+        final Entry entry = previous.sources.get(sourceKey);
+        if (entry == null || !entry.sourceHash.equals(sourceHash) || usesChangedTemplates(entry))
+        {
+            return false;
+        }
+        for (Map.Entry<String, String> output : entry.outputs.entrySet())
+        {
+            File file = new File(outputFolder, output.getKey());
+            if (!file.isFile() || !Utils.hashFile(file).equals(output.getValue()))
+            {
+                return false;
+            }
+        }
+        put(entry);
+        return true;
+    }
+
+    /**
+     * Checks if any output of the entry used a changed template, or if the
+     * entry was handled by a processor that gained a template key
+     *
+     * @param entry - source entry
+     * @return true if the source needs to be generated again
+     */
+    public synchronized boolean usesChangedTemplates(Entry entry)
+    {
+        for (String processor : entry.processors)
+        {
+            if (changedProcessors.contains(processor))
+            {
+                return true;
+            }
+        }
+        for (Set<String> refs : entry.outputTemplates.values())
+        {
+            for (String ref : refs)
+            {
+                if (changedRefs.contains(ref))
+                {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    public synchronized void put(Entry entry)
+    {
+        sources.put(entry.sourceKey, entry);
+    }
+
+    public synchronized Entry get(String sourceKey)
+    {
+        return sources.get(sourceKey);
+    }
+
+    public synchronized Entry remove(String sourceKey)
+    {
+        return sources.remove(sourceKey);
+    }
+
+    /**
+     * Gets the keys of all sources in the manifest
+     *
+     * @return copy of the source keys
+     */
+    public synchronized List<String> getSourceKeys()
+    {
+        return new ArrayList(sources.keySet());
+    }
+
+    /**
+     * Gets the processors that handled any source in the manifest
+     *
+     * @return processor class names
+     */
+    public synchronized Set<String> getSourceProcessors()
+    {
+        final Set<String> processors = new HashSet();
+        for (Entry entry : sources.values())
+        {
+            processors.addAll(entry.processors);
+        }
+        return processors;
+    }
+
+    /**
+     * Gets the processors that handled sources in the previous run which
+     * were not carried over or generated again in this run
+     *
+     * @return processor class names
+     */
+    public synchronized Set<String> getRemovedSourceProcessors()
+    {
+        final Set<String> processors = new HashSet();
+        if (previous != null)
+        {
+            for (Entry entry : previous.sources.values())
+            {
+                if (!sources.containsKey(entry.sourceKey))
+                {
+                    processors.addAll(entry.processors);
+                }
+            }
+        }
+        return processors;
+    }
+
+    /**
+     * Collects all outputs stored in the manifest
+     *
+     * @return set of output paths
+     */
+    public synchronized Set<String> getOutputs()
+    {
+        Set<String> outputs = new HashSet();
+        for (Entry entry : sources.values())
+        {
+            outputs.addAll(entry.outputs.keySet());
+        }
+        return outputs;
+    }
+
+    /**
+     * Deletes outputs stored in the previous manifest that
+     * were not created or kept by this run.
+     *
+     * @return files that were removed
+     */
+    public synchronized List<String> pruneStale()
+    {
+        final List<String> removed = new ArrayList();
+        if (previous == null)
+        {
+            return removed;
+        }
+        final Set<String> keep = getOutputs();
+        for (Entry entry : previous.sources.values())
+        {
+            for (String output : entry.outputs.keySet())
+            {
+                if (!keep.contains(output))
+                {
+                    File file = new File(outputFolder, output);
+                    if (file.exists())
+                    {
+                        if (file.delete())
+                        {
+                            removed.add(output);
+                        }
+                        else
+                        {
+                            Main.warn("Failed to delete stale file: " + file);
+                        }
+                    }
+                }
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Loads a manifest from disk
+     *
+     * @param file         - file to load
+     * @param sourceFolder - source folder of the current run
+     * @param outputFolder - output folder of the current run
+     * @return manifest, or null if the file does not exist or is not readable
+     */
+    public static BuildManifest load(File file, Path sourceFolder, File outputFolder)
+    {
+        if (!file.isFile())
+        {
+            return null;
+        }
+        try
+        {
+            BufferedReader br = new BufferedReader(new FileReader(file));
+            try
+            {
+                BuildManifest manifest = null;
+                Entry entry = null;
+                String line;
+                while ((line = br.readLine()) != null)
+                {
+                    if (line.isEmpty() || line.startsWith("#"))
+                    {
+                        continue;
+                    }
+                    String[] split = line.split("\t");
+                    if (split[0].equals("settings"))
+                    {
+                        manifest = new BuildManifest(sourceFolder, outputFolder, split[1]);
+                    }
+                    else if (manifest == null)
+                    {
+                        break;
+                    }
+                    else if (split[0].equals("template"))
+                    {
+                        manifest.putTemplate(split[1], split[2], readSet(split, 3));
+                    }
+                    else if (split[0].equals("source"))
+                    {
+                        entry = new Entry(split[1], split[2]);
+                        entry.processors.addAll(readSet(split, 3));
+                        manifest.put(entry);
+                    }
+                    else if (split[0].equals("output") && entry != null)
+                    {
+                        entry.outputs.put(split[1], split[2]);
+                        entry.outputTemplates.put(split[1], readSet(split, 3));
+                    }
+                }
+                return manifest;
+            }
+            finally
+            {
+                br.close();
+            }
+        }
+        catch (Exception e)
+        {
+            Main.warn("Failed to read build manifest " + file + ", doing a full build. Error: " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Saves the manifest to disk
+     *
+     * @param file - file to write
+     * @throws IOException
+     */
+    public synchronized void save(File file) throws IOException
+    {
+        FileWriter writer = new FileWriter(file);
+        try
+        {
+            writer.write("#VoltzEngine code generator build manifest, do not edit\n");
+            writer.write("settings\t" + settingsHash + "\n");
+            for (TemplateEntry template : templates.values())
+            {
+                writer.write("template\t" + template.path + "\t" + template.hash + "\t" + writeSet(template.refs) + "\n");
+            }
+            for (Entry entry : sources.values())
+            {
+                writer.write("source\t" + entry.sourceKey + "\t" + entry.sourceHash + "\t" + writeSet(entry.processors) + "\n");
+                for (Map.Entry<String, String> output : entry.outputs.entrySet())
+                {
+                    Set<String> refs = entry.outputTemplates.get(output.getKey());
+                    writer.write("output\t" + output.getKey() + "\t" + output.getValue() + "\t" + writeSet(refs != null ? refs : new TreeSet()) + "\n");
+                }
+            }
+        }
+        finally
+        {
+            writer.close();
+        }
+    }
+
+    private static Set<String> readSet(String[] split, int index)
+    {
+        final Set<String> set = new TreeSet();
+        if (split.length > index && !split[index].isEmpty())
+        {
+            for (String value : split[index].split(","))
+            {
+                set.add(value);
+            }
+        }
+        return set;
+    }
+
+    private static String writeSet(Set<String> set)
+    {
+        final StringBuilder builder = new StringBuilder();
+        for (String value : set)
+        {
+            if (builder.length() > 0)
+            {
+                builder.append(',');
+            }
+            builder.append(value);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Single source file and the outputs it created
+     */
+    public static class Entry
+    {
+        public final String sourceKey;
+        public final String sourceHash;
+        /** Class names of the processors that handled the source */
+        public final Set<String> processors = new TreeSet();
+        /** Output path to content hash */
+        public final Map<String, String> outputs = new TreeMap();
+        /** Output path to the template references it was built from */
+        public final Map<String, Set<String>> outputTemplates = new TreeMap();
+
+        public Entry(String sourceKey, String sourceHash)
+        {
+            this.sourceKey = sourceKey;
+            this.sourceHash = sourceHash;
+        }
+    }
+
+    /**
+     * Template file and the template references loaded from it
+     */
+    public static class TemplateEntry
+    {
+        public final String path;
+        public final String hash;
+        public final Set<String> refs;
+
+        public TemplateEntry(String path, String hash, Set<String> refs)
+        {
+            this.path = path;
+            this.hash = hash;
+            this.refs = new TreeSet(refs);
+        }
+    }
+}
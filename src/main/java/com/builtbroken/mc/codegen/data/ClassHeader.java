@@ -0,0 +1,31 @@
+package com.builtbroken.mc.codegen.data;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Data read from the header of a source file, everything before the class body
+ *
+ * @see <a href="https://github.com/BuiltBrokenModding/VoltzEngine/blob/development/license.md">License</a> for what you can and can't do with the code.
+ */
+public class ClassHeader
+{
+    /** File the header was read from, may be inside an archive */
+    public final Path file;
+    /** Class name of the file */
+    public final String className;
+    /** Package of the class, null if not found */
+    public final String classPackage;
+    /** Annotations found in the header, without the leading @ */
+    public final List<String> annotations;
+    /** Number of bytes read from the file to find the header */
+    public int bytesRead;
+
+    public ClassHeader(Path file, String className, String classPackage, List<String> annotations)
+    {
+        this.file = file;
+        this.className = className;
+        this.classPackage = classPackage;
+        this.annotations = annotations;
+    }
+}
@@ -0,0 +1,35 @@
+package com.builtbroken.mc.codegen.data;
+
+import java.util.List;
+
+/**
+ * Output file rendered by a processor, waiting to be handed to an output sink
+ *
+ * @see <a href="https://github.com/BuiltBrokenModding/VoltzEngine/blob/development/license.md">License</a> for what you can and can't do with the code.
+ */
+public class GeneratedFile
+{
+    /** Path of the file relative to the output root, using / as the separator */
+    public final String path;
+    /** Fully qualified name of the generated class */
+    public final String className;
+    /** Content of the file */
+    public final String content;
+    /** Content of the file as bytes */
+    public final byte[] data;
+
+    /** Fully qualified name of the source class the file was generated from */
+    public final String sourceClass;
+    /** Keys of the templates used to build the file */
+    public final List<String> templateKeys;
+
+    public GeneratedFile(String path, String className, String content, byte[] data, String sourceClass, List<String> templateKeys)
+    {
+        this.path = path;
+        this.className = className;
+        this.content = content;
+        this.data = data;
+        this.sourceClass = sourceClass;
+        this.templateKeys = templateKeys;
+    }
+}
@@ -0,0 +1,33 @@
+package com.builtbroken.mc.codegen.data;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Parts of an output file that only depend on the templates used and the class
+ * being extended. Shared between all outputs that use the same templates.
+ *
+ * @see <a href="https://github.com/BuiltBrokenModding/VoltzEngine/blob/development/license.md">License</a> for what you can and can't do with the code.
+ */
+public class RenderedTemplates
+{
+    /** Imports collected from the templates, in output order */
+    public final List<String> imports;
+    /** Implements clause including the leading space, empty if no interfaces */
+    public final String interfaces;
+    /** Class body from the templates */
+    public final String body;
+    /** Identifiers used in the body, for removing unused imports */
+    public final Set<String> bodyNames;
+    /** Members declared by more than one of the templates, warned for each output */
+    public final List<String> duplicates;
+
+    public RenderedTemplates(List<String> imports, String interfaces, String body, Set<String> bodyNames, List<String> duplicates)
+    {
+        this.imports = imports;
+        this.interfaces = interfaces;
+        this.body = body;
+        this.bodyNames = bodyNames;
+        this.duplicates = duplicates;
+    }
+}
@@ -0,0 +1,261 @@
+package com.builtbroken.mc.codegen.logging;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Leveled console output written by a background thread.
+ * <p>
+ * Messages are queued and written in batches so threads generating files do not wait
+ * on the console. When the queue is full callers block until there is room. Per file
+ * detail is logged at {@link Level#DEBUG}, check {@link #isDebug()} before building the
+ * message so nothing is formatted when debug is off.
+ * <p>
+ * Warnings and errors are shown at every level and go to System.err. Call {@link #flush()}
+ * before exiting so queued messages are not lost.
+ *
+ * @see <a href="https://github.com/BuiltBrokenModding/VoltzEngine/blob/development/license.md">License</a> for what you can and can't do with the code.
+ */
+public class Log
+{
+    public enum Level
+    {
+        /** Only warnings and errors */
+        QUIET,
+        /** Progress and summaries */
+        INFO,
+        /** Detail for each file and template */
+        DEBUG
+    }
+
+    /** Max number of messages waiting to be written */
+    public static final int QUEUE_SIZE = 8192;
+
+    private static volatile Level level = Level.INFO;
+
+    private static final BlockingQueue<Entry> queue = new ArrayBlockingQueue(QUEUE_SIZE);
+    private static Thread writer;
+
+    public static void setLevel(Level level)
+    {
+        Log.level = level;
+    }
+
+    public static Level getLevel()
+    {
+        return level;
+    }
+
+    /**
+     * Sets the level from a program argument
+     *
+     * @param value - quiet, info or debug
+     */
+    public static void setLevel(String value)
+    {
+        try
+        {
+            setLevel(Level.valueOf(value.trim().toUpperCase()));
+        }
+        catch (IllegalArgumentException e)
+        {
+            warn("Unknown log level '" + value + "', use quiet, info or debug");
+        }
+    }
+
+    public static boolean isInfo()
+    {
+        return level != Level.QUIET;
+    }
+
+    public static boolean isDebug()
+    {
+        return level == Level.DEBUG;
+    }
+
+    public static void debug(String msg)
+    {
+        if (level == Level.DEBUG)
+        {
+            add(new Entry(msg, false, null));
+        }
+    }
+
+    public static void info(String msg)
+    {
+        if (level != Level.QUIET)
+        {
+            add(new Entry(msg, false, null));
+        }
+    }
+
+    public static void warn(String msg)
+    {
+        add(new Entry(msg, true, null));
+    }
+
+    /**
+     * Writes the error and its stack trace, waiting until it is written
+     *
+     * @param msg - message
+     * @param t   - cause, null if none
+     */
+    public static void error(String msg, Throwable t)
+    {
+        add(new Entry(msg, true, null));
+        flush();
+        if (t != null)
+        {
+            t.printStackTrace();
+        }
+    }
+
+    /**
+     * Waits until all queued messages are written
+     */
+    public static void flush()
+    {
+        final CountDownLatch latch = new CountDownLatch(1);
+        add(new Entry(null, false, latch));
+        try
+        {
+            latch.await();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void add(Entry entry)
+    {
+        startWriter();
+        try
+        {
+            queue.put(entry);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static synchronized void startWriter()
+    {
+        if (writer == null)
+        {
+            writer = new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    writeLoop();
+                }
+            }, "codegen-log");
+            writer.setDaemon(true);
+            writer.start();
+
+            Runtime.getRuntime().addShutdownHook(new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    drain();
+                }
+            }, "codegen-log-shutdown"));
+        }
+    }
+
+    private static void writeLoop()
+    {
+        final List<Entry> batch = new ArrayList();
+        while (true)
+        {
+            try
+            {
+                batch.add(queue.take());
+            }
+            catch (InterruptedException e)
+            {
+                return;
+            }
+            queue.drainTo(batch);
+            write(batch);
+            batch.clear();
+        }
+    }
+
+    /** Writes anything left in the queue, called on shutdown */
+    private static void drain()
+    {
+        final List<Entry> batch = new ArrayList();
+        queue.drainTo(batch);
+        write(batch);
+    }
+
+    /** Writes the batch with one print per stream run so the console is flushed once per batch */
+    private static synchronized void write(List<Entry> batch)
+    {
+        final StringBuilder out = new StringBuilder();
+        final StringBuilder err = new StringBuilder();
+        for (Entry entry : batch)
+        {
+            if (entry.latch != null)
+            {
+                print(out, err);
+                entry.latch.countDown();
+            }
+            else if (entry.error)
+            {
+                //Keep order between the streams
+                if (out.length() > 0)
+                {
+                    print(out, err);
+                }
+                err.append(entry.message).append('\n');
+            }
+            else
+            {
+                if (err.length() > 0)
+                {
+                    print(out, err);
+                }
+                out.append(entry.message).append('\n');
+            }
+        }
+        print(out, err);
+    }
+
+    private static void print(StringBuilder out, StringBuilder err)
+    {
+        if (out.length() > 0)
+        {
+            System.out.print(out);
+            System.out.flush();
+            out.setLength(0);
+        }
+        if (err.length() > 0)
+        {
+            System.err.print(err);
+            System.err.flush();
+            err.setLength(0);
+        }
+    }
+
+    private static class Entry
+    {
+        final String message;
+        final boolean error;
+        final CountDownLatch latch;
+
+        Entry(String message, boolean error, CountDownLatch latch)
+        {
+            this.message = message;
+            this.error = error;
+            this.latch = latch;
+        }
+    }
+}
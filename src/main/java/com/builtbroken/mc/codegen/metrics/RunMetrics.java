@@ -0,0 +1,315 @@
+package com.builtbroken.mc.codegen.metrics;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Timings and counts collected during a run, written as JSON at the end.
+ * <p>
+ * Template load, scan, finalize and compile are single spans measured on the main thread,
+ * their CPU time is for the whole process. Processor load, header parse, render and write
+ * are summed over every call from every thread, their CPU time is that of the calling threads.
+ * With several threads the summed times can be larger than the wall time of the scan.
+ * <p>
+ * Processors are created the first time a source uses them, the scan does not include the
+ * processor load time spent during it. With several threads other workers keep scanning while
+ * a processor loads, so the scan time is a lower bound in that case.
+ * <p>
+ * Safe to update from several threads.
+ *
+ * @see <a href="https://github.com/BuiltBrokenModding/VoltzEngine/blob/development/license.md">License</a> for what you can and can't do with the code.
+ */
+public class RunMetrics
+{
+    /** Number of slowest source files to keep */
+    public static int SLOWEST_FILES = 10;
+
+    private static final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+    public final Phase templateLoad = new Phase("templateLoad");
+    public final Phase processorLoad = new Phase("processorLoad");
+    public final Phase scan = new Phase("scan");
+    public final Phase headerParse = new Phase("headerParse");
+    public final Phase render = new Phase("render");
+    public final Phase write = new Phase("write");
+    public final Phase finalize = new Phase("finalize");
+    public final Phase compile = new Phase("compile");
+
+    public final AtomicLong filesScanned = new AtomicLong();
+    public final AtomicLong filesRejected = new AtomicLong();
+    public final AtomicLong bytesRead = new AtomicLong();
+    public final AtomicLong templatesLoaded = new AtomicLong();
+    public final AtomicLong templatesParsed = new AtomicLong();
+    public final AtomicLong sourcesGenerated = new AtomicLong();
+    public final AtomicLong sourcesSkipped = new AtomicLong();
+    public final AtomicLong outputsWritten = new AtomicLong();
+    public final AtomicLong outputsSkipped = new AtomicLong();
+
+    private final long startTime = System.nanoTime();
+    private final long startCpu = processCpuTime();
+
+    /** Fastest of the kept files first so it can be replaced */
+    private final PriorityQueue<FileTime> slowest = new PriorityQueue(SLOWEST_FILES + 1, new Comparator<FileTime>()
+    {
+        @Override
+        public int compare(FileTime a, FileTime b)
+        {
+            return Long.compare(a.nanos, b.nanos);
+        }
+    });
+
+    /**
+     * Records the time taken to generate outputs for a source file
+     *
+     * @param file  - source file
+     * @param nanos - time taken
+     */
+    public void recordFile(Path file, long nanos)
+    {
+        synchronized (slowest)
+        {
+            if (slowest.size() < SLOWEST_FILES || slowest.peek().nanos < nanos)
+            {
+                slowest.add(new FileTime(file.toString(), nanos));
+                if (slowest.size() > SLOWEST_FILES)
+                {
+                    slowest.poll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the slowest source files
+     *
+     * @return files, slowest first
+     */
+    public List<FileTime> getSlowestFiles()
+    {
+        final List<FileTime> list;
+        synchronized (slowest)
+        {
+            list = new ArrayList(slowest);
+        }
+        Collections.sort(list, Collections.reverseOrder(slowest.comparator()));
+        return list;
+    }
+
+    /**
+     * Gets the CPU time of the current thread
+     *
+     * @return nanoseconds, 0 if not supported
+     */
+    public static long threadCpuTime()
+    {
+        return threadBean.isCurrentThreadCpuTimeSupported() ? threadBean.getCurrentThreadCpuTime() : 0;
+    }
+
+    /**
+     * Gets the CPU time of the process
+     *
+     * @return nanoseconds, 0 if not supported
+     */
+    public static long processCpuTime()
+    {
+        OperatingSystemMXBean bean = ManagementFactory.getOperatingSystemMXBean();
+        if (bean instanceof com.sun.management.OperatingSystemMXBean)
+        {
+            return ((com.sun.management.OperatingSystemMXBean) bean).getProcessCpuTime();
+        }
+        return 0;
+    }
+
+    /**
+     * Creates a one line summary of the phases
+     *
+     * @return summary
+     */
+    public String getSummary()
+    {
+        final StringBuilder builder = new StringBuilder();
+        for (Phase phase : getPhases())
+        {
+            if (builder.length() > 0)
+            {
+                builder.append(", ");
+            }
+            builder.append(phase.name).append(" ").append(TimeUnit.NANOSECONDS.toMillis(phase.wallNanos.get())).append("ms");
+        }
+        return builder.toString();
+    }
+
+    public List<Phase> getPhases()
+    {
+        final List<Phase> phases = new ArrayList();
+        Collections.addAll(phases, templateLoad, processorLoad, scan, headerParse, render, write, finalize, compile);
+        return phases;
+    }
+
+    /**
+     * Writes the metrics as JSON
+     *
+     * @param file     - file to write
+     * @param settings - settings of the run, included in the report
+     * @throws IOException
+     */
+    public void writeJson(File file, Map<String, String> settings) throws IOException
+    {
+        final StringBuilder builder = new StringBuilder();
+        builder.append("{\n");
+        builder.append("  \"wallMs\": ").append(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime)).append(",\n");
+        builder.append("  \"cpuMs\": ").append(TimeUnit.NANOSECONDS.toMillis(processCpuTime() - startCpu)).append(",\n");
+
+        builder.append("  \"settings\": {");
+        boolean first = true;
+        for (Map.Entry<String, String> entry : settings.entrySet())
+        {
+            builder.append(first ? "\n" : ",\n");
+            builder.append("    ").append(quote(entry.getKey())).append(": ").append(quote(entry.getValue()));
+            first = false;
+        }
+        builder.append("\n  },\n");
+
+        builder.append("  \"phases\": {");
+        first = true;
+        for (Phase phase : getPhases())
+        {
+            builder.append(first ? "\n" : ",\n");
+            builder.append("    ").append(quote(phase.name)).append(": {\"calls\": ").append(phase.calls.get())
+                    .append(", \"wallMs\": ").append(toMillis(phase.wallNanos.get()))
+                    .append(", \"cpuMs\": ").append(toMillis(phase.cpuNanos.get())).append("}");
+            first = false;
+        }
+        builder.append("\n  },\n");
+
+        final Map<String, AtomicLong> counts = new LinkedHashMap();
+        counts.put("filesScanned", filesScanned);
+        counts.put("filesRejected", filesRejected);
+        counts.put("bytesRead", bytesRead);
+        counts.put("templatesLoaded", templatesLoaded);
+        counts.put("templatesParsed", templatesParsed);
+        counts.put("sourcesGenerated", sourcesGenerated);
+        counts.put("sourcesSkipped", sourcesSkipped);
+        counts.put("outputsWritten", outputsWritten);
+        counts.put("outputsSkipped", outputsSkipped);
+        builder.append("  \"counts\": {");
+        first = true;
+        for (Map.Entry<String, AtomicLong> entry : counts.entrySet())
+        {
+            builder.append(first ? "\n" : ",\n");
+            builder.append("    ").append(quote(entry.getKey())).append(": ").append(entry.getValue().get());
+            first = false;
+        }
+        builder.append("\n  },\n");
+
+        builder.append("  \"slowestFiles\": [");
+        first = true;
+        for (FileTime time : getSlowestFiles())
+        {
+            builder.append(first ? "\n" : ",\n");
+            builder.append("    {\"file\": ").append(quote(time.file)).append(", \"ms\": ").append(toMillis(time.nanos)).append("}");
+            first = false;
+        }
+        builder.append("\n  ]\n");
+        builder.append("}\n");
+
+        if (file.getParentFile() != null && !file.getParentFile().exists())
+        {
+            file.getParentFile().mkdirs();
+        }
+        FileWriter writer = new FileWriter(file);
+        try
+        {
+            writer.write(builder.toString());
+        }
+        finally
+        {
+            writer.close();
+        }
+    }
+
+    /** Milliseconds with 3 decimals, per call phases are often under a millisecond */
+    private static String toMillis(long nanos)
+    {
+        return Long.toString(nanos / 1000000) + "." + String.format(Locale.ROOT, "%03d", (nanos / 1000) % 1000);
+    }
+
+    private static String quote(String string)
+    {
+        if (string == null)
+        {
+            return "null";
+        }
+        final StringBuilder builder = new StringBuilder("\"");
+        for (int i = 0; i < string.length(); i++)
+        {
+            final char c = string.charAt(i);
+            if (c == '"' || c == '\\')
+            {
+                builder.append('\\').append(c);
+            }
+            else if (c < 0x20)
+            {
+                builder.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+            }
+            else
+            {
+                builder.append(c);
+            }
+        }
+        return builder.append('"').toString();
+    }
+
+    /**
+     * Time spent in a part of the run
+     */
+    public static class Phase
+    {
+        public final String name;
+        public final AtomicLong calls = new AtomicLong();
+        public final AtomicLong wallNanos = new AtomicLong();
+        public final AtomicLong cpuNanos = new AtomicLong();
+
+        public Phase(String name)
+        {
+            this.name = name;
+        }
+
+        public void add(long wall, long cpu)
+        {
+            calls.incrementAndGet();
+            wallNanos.addAndGet(wall);
+            cpuNanos.addAndGet(cpu);
+        }
+    }
+
+    /**
+     * Time taken by a source file
+     */
+    public static class FileTime
+    {
+        public final String file;
+        public final long nanos;
+
+        public FileTime(String file, long nanos)
+        {
+            this.file = file;
+            this.nanos = nanos;
+        }
+    }
+}
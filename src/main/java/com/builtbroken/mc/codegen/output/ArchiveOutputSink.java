@@ -0,0 +1,294 @@
+package com.builtbroken.mc.codegen.output;
+
+import com.builtbroken.mc.codegen.data.GeneratedFile;
+import com.builtbroken.mc.codegen.utils.Utils;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Enumeration;
+import java.util.GregorianCalendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes generated files into a single jar or zip archive.
+ * <p>
+ * Files are spooled to a temporary archive next to the target as they arrive, only their
+ * paths and content hashes are kept in memory. When closed the entries are copied sorted by
+ * path with a fixed time, so the same generated files always produce the same archive bytes
+ * no matter the order or threads they were generated on. The archive is only replaced if
+ * its entries changed.
+ *
+ * @see <a href="https://github.com/BuiltBrokenModding/VoltzEngine/blob/development/license.md">License</a> for what you can and can't do with the code.
+ */
+public class ArchiveOutputSink implements OutputSink
+{
+    /** Time stored on every entry, zip times before 1980 are not valid so 1 February 1980 is used to stay clear of that limit in every time zone */
+    public static final long ENTRY_TIME = new GregorianCalendar(1980, Calendar.FEBRUARY, 1, 0, 0, 0).getTimeInMillis();
+
+    /** Archive to write */
+    public final File file;
+
+    /** Path to the spooled entry holding its content */
+    private final Map<String, Entry> entries = new TreeMap();
+    /** Temporary archive files are written to as they arrive */
+    private final File spoolFile;
+    private ZipOutputStream spool;
+    private int spooled = 0;
+    private boolean changed = false;
+
+    public ArchiveOutputSink(File file)
+    {
+        this.file = file;
+        this.spoolFile = new File(file.getPath() + ".spool");
+    }
+
+    @Override
+    public synchronized boolean write(GeneratedFile file) throws IOException
+    {
+        if (spool == null)
+        {
+            if (spoolFile.getParentFile() != null && !spoolFile.getParentFile().exists())
+            {
+                spoolFile.getParentFile().mkdirs();
+            }
+            spool = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(spoolFile)));
+            spool.setLevel(Deflater.BEST_SPEED);
+        }
+
+        //Spooled entries are numbered as a path may be written more than once, the last one is kept
+        final String name = Integer.toString(spooled++);
+        spool.putNextEntry(new ZipEntry(name));
+        spool.write(file.data);
+        spool.closeEntry();
+        entries.put(file.path, new Entry(name, Utils.hash(file.data)));
+        return true;
+    }
+
+    @Override
+    public synchronized void close() throws IOException
+    {
+        if (spool != null)
+        {
+            spool.close();
+            spool = null;
+        }
+
+        final File temp = new File(file.getPath() + ".tmp");
+        try
+        {
+            changed = !isUpToDate();
+            if (changed)
+            {
+                writeSorted(temp);
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        finally
+        {
+            Files.deleteIfExists(temp.toPath());
+            Files.deleteIfExists(spoolFile.toPath());
+        }
+    }
+
+    /**
+     * Gets the number of files collected
+     *
+     * @return file count
+     */
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * Checks if the archive was replaced on the last close
+     *
+     * @return false if the archive already had the same content
+     */
+    public synchronized boolean isChanged()
+    {
+        return changed;
+    }
+
+    /** Copies the spooled entries sorted by path into the archive */
+    private void writeSorted(File target) throws IOException
+    {
+        if (target.getParentFile() != null && !target.getParentFile().exists())
+        {
+            target.getParentFile().mkdirs();
+        }
+        final ZipFile source = spoolFile.isFile() ? new ZipFile(spoolFile) : null;
+        try
+        {
+            final ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(target)));
+            try
+            {
+                final Set<String> folders = new HashSet();
+                for (Map.Entry<String, Entry> entry : entries.entrySet())
+                {
+                    for (String folder : getNewFolders(entry.getKey(), folders))
+                    {
+                        putEntry(zip, folder, null);
+                    }
+                    final InputStream stream = source.getInputStream(source.getEntry(entry.getValue().name));
+                    try
+                    {
+                        putEntry(zip, entry.getKey(), stream);
+                    }
+                    finally
+                    {
+                        stream.close();
+                    }
+                }
+            }
+            finally
+            {
+                zip.close();
+            }
+        }
+        finally
+        {
+            if (source != null)
+            {
+                source.close();
+            }
+        }
+    }
+
+    /**
+     * Checks if the existing archive has the same entries in the same order with the same content
+     *
+     * @return true if the archive does not need to be written
+     */
+    private boolean isUpToDate() throws IOException
+    {
+        if (!file.isFile())
+        {
+            return false;
+        }
+        final ZipFile zip;
+        try
+        {
+            zip = new ZipFile(file);
+        }
+        catch (ZipException e)
+        {
+            return false;
+        }
+        try
+        {
+            final Enumeration<? extends ZipEntry> existing = zip.entries();
+            final Set<String> folders = new HashSet();
+            for (Map.Entry<String, Entry> entry : entries.entrySet())
+            {
+                for (String folder : getNewFolders(entry.getKey(), folders))
+                {
+                    if (!existing.hasMoreElements() || !existing.nextElement().getName().equals(folder))
+                    {
+                        return false;
+                    }
+                }
+                if (!existing.hasMoreElements())
+                {
+                    return false;
+                }
+                final ZipEntry zipEntry = existing.nextElement();
+                if (!zipEntry.getName().equals(entry.getKey()) || !hash(zip, zipEntry).equals(entry.getValue().hash))
+                {
+                    return false;
+                }
+            }
+            return !existing.hasMoreElements();
+        }
+        finally
+        {
+            zip.close();
+        }
+    }
+
+    private static String hash(ZipFile zip, ZipEntry entry) throws IOException
+    {
+        final MessageDigest digest = Utils.createDigest();
+        final InputStream stream = zip.getInputStream(entry);
+        try
+        {
+            final byte[] buffer = new byte[8192];
+            int read;
+            while ((read = stream.read(buffer)) != -1)
+            {
+                digest.update(buffer, 0, read);
+            }
+        }
+        finally
+        {
+            stream.close();
+        }
+        return Utils.toHex(digest);
+    }
+
+    /** Gets the parent folders of the path that were not listed yet */
+    private static List<String> getNewFolders(String path, Set<String> folders)
+    {
+        final List<String> added = new ArrayList();
+        int slash = path.indexOf('/');
+        while (slash != -1)
+        {
+            final String folder = path.substring(0, slash + 1);
+            if (folders.add(folder))
+            {
+                added.add(folder);
+            }
+            slash = path.indexOf('/', slash + 1);
+        }
+        return added;
+    }
+
+    private static void putEntry(ZipOutputStream zip, String path, InputStream data) throws IOException
+    {
+        final ZipEntry entry = new ZipEntry(path);
+        entry.setTime(ENTRY_TIME);
+        zip.putNextEntry(entry);
+        if (data != null)
+        {
+            final byte[] buffer = new byte[8192];
+            int read;
+            while ((read = data.read(buffer)) != -1)
+            {
+                zip.write(buffer, 0, read);
+            }
+        }
+        zip.closeEntry();
+    }
+
+    /** Spooled entry of a generated file */
+    private static class Entry
+    {
+        /** Name of the entry in the spool archive */
+        final String name;
+        /** Hash of the content */
+        final String hash;
+
+        Entry(String name, String hash)
+        {
+            this.name = name;
+            this.hash = hash;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.builtbroken.mc.codegen.output;
+
+import com.builtbroken.mc.codegen.data.GeneratedFile;
+
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.FilerException;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.Elements;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes generated files through the {@link Filer} of an annotation processing run so
+ * javac compiles them and tracks them against the source class they came from
+ *
+ * @see <a href="https://github.com/BuiltBrokenModding/VoltzEngine/blob/development/license.md">License</a> for what you can and can't do with the code.
+ */
+public class FilerOutputSink implements OutputSink
+{
+    public final Filer filer;
+    public final Elements elements;
+
+    public FilerOutputSink(Filer filer, Elements elements)
+    {
+        this.filer = filer;
+        this.elements = elements;
+    }
+
+    @Override
+    public synchronized boolean write(GeneratedFile file) throws IOException
+    {
+        //Link the output to its source so javac knows what to rebuild when the source changes
+        final TypeElement source = elements.getTypeElement(file.sourceClass);
+        final JavaFileObject fileObject;
+        try
+        {
+            fileObject = source != null ? filer.createSourceFile(file.className, source) : filer.createSourceFile(file.className, new Element[0]);
+        }
+        catch (FilerException e)
+        {
+            //Already created this compile, javac does not allow writing a file twice
+            return false;
+        }
+
+        OutputStream out = fileObject.openOutputStream();
+        try
+        {
+            out.write(file.data);
+        }
+        finally
+        {
+            out.close();
+        }
+        return true;
+    }
+
+    @Override
+    public void close()
+    {
+
+    }
+}
@@ -0,0 +1,39 @@
+package com.builtbroken.mc.codegen.output;
+
+import com.builtbroken.mc.codegen.data.GeneratedFile;
+import com.builtbroken.mc.codegen.utils.Utils;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Writes each generated file to its own file inside a folder, skipping files whose content did not change
+ *
+ * @see <a href="https://github.com/BuiltBrokenModding/VoltzEngine/blob/development/license.md">License</a> for what you can and can't do with the code.
+ */
+public class FolderOutputSink implements OutputSink
+{
+    public final File folder;
+
+    public FolderOutputSink(File folder)
+    {
+        this.folder = folder;
+    }
+
+    @Override
+    public boolean write(GeneratedFile file) throws IOException
+    {
+        File outFile = new File(folder, file.path.replace("/", File.separator));
+        if (!outFile.getParentFile().exists())
+        {
+            outFile.getParentFile().mkdirs();
+        }
+        return Utils.writeIfChanged(outFile, file.data);
+    }
+
+    @Override
+    public void close()
+    {
+
+    }
+}
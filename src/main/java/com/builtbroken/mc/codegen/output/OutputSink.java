@@ -0,0 +1,29 @@
+package com.builtbroken.mc.codegen.output;
+
+import com.builtbroken.mc.codegen.data.GeneratedFile;
+
+import java.io.IOException;
+
+/**
+ * Destination for files generated by processors
+ *
+ * @see <a href="https://github.com/BuiltBrokenModding/VoltzEngine/blob/development/license.md">License</a> for what you can and can't do with the code.
+ */
+public interface OutputSink
+{
+    /**
+     * Called to store a generated file. May be called from several threads.
+     *
+     * @param file - file to store
+     * @return true if the file was written, false if skipped because it did not change
+     * @throws IOException
+     */
+    boolean write(GeneratedFile file) throws IOException;
+
+    /**
+     * Called once all files have been generated
+     *
+     * @throws IOException
+     */
+    void close() throws IOException;
+}
@@ -0,0 +1,204 @@
+package com.builtbroken.mc.codegen.pipeline;
+
+import com.builtbroken.mc.codegen.Main;
+import com.builtbroken.mc.codegen.data.BuildManifest;
+import com.builtbroken.mc.codegen.data.ClassHeader;
+import com.builtbroken.mc.codegen.processor.Processor;
+import com.builtbroken.mc.codegen.processor.ProcessorIndex;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the source scan as a set of stages connected by bounded queues.
+ * <p>
+ * scan - walks the source folder on the calling thread and queues each file<br>
+ * parse - reads the header of each file<br>
+ * generate - passes headers to processors which render the output<br>
+ * write - writes rendered output to disk<br>
+ * <p>
+ * Each stage has its own thread pool. Processors are called from the generate threads so
+ * when more than one generate thread is used the processors must be thread safe, and the
+ * order files reach a processor is not fixed.
+ *
+ * @see <a href="https://github.com/BuiltBrokenModding/VoltzEngine/blob/development/license.md">License</a> for what you can and can't do with the code.
+ */
+public class GeneratorPipeline
+{
+    /** Seconds between progress output */
+    public static int PROGRESS_INTERVAL = 10;
+
+    public final Stage parse;
+    public final Stage generate;
+    public final Stage write;
+
+    private final ProcessorIndex processors;
+    private final File outputFolder;
+    private final BuildManifest manifest;
+
+    private volatile long filesScanned = 0;
+
+    public GeneratorPipeline(ProcessorIndex processors, File outputFolder, BuildManifest manifest, int parseThreads, int generateThreads, int writeThreads, int queueSize)
+    {
+        this.processors = processors;
+        this.outputFolder = outputFolder;
+        this.manifest = manifest;
+        this.parse = new Stage("parse", parseThreads, queueSize);
+        this.generate = new Stage("generate", generateThreads, queueSize);
+        this.write = new Stage("write", writeThreads, queueSize);
+    }
+
+    /**
+     * Creates the pipeline using settings from the program arguments
+     *
+     * @param processors   - processors to pass files to
+     * @param outputFolder - folder to write files to
+     * @param manifest     - manifest for incremental builds, null for a full build
+     * @param settings     - program arguments
+     * @return pipeline
+     */
+    public static GeneratorPipeline create(ProcessorIndex processors, File outputFolder, BuildManifest manifest, HashMap<String, String> settings)
+    {
+        final int cores = Runtime.getRuntime().availableProcessors();
+        return new GeneratorPipeline(processors, outputFolder, manifest,
+                getInt(settings, "parseThreads", cores),
+                getInt(settings, "generateThreads", 1),
+                getInt(settings, "writeThreads", 2),
+                getInt(settings, "queueSize", 1024));
+    }
+
+    private static int getInt(HashMap<String, String> settings, String key, int defaultValue)
+    {
+        String value = settings.get(key);
+        return value != null && !value.isEmpty() ? Integer.parseInt(value) : defaultValue;
+    }
+
+    /**
+     * Runs all stages on the source folder and waits for them to finish
+     *
+     * @param sourceFolder - folder to scan, may be the root of an archive
+     */
+    public void run(Path sourceFolder)
+    {
+        //Processors may be created part way through the scan
+        final ProcessorIndex.Listener listener = new ProcessorIndex.Listener()
+        {
+            @Override
+            public void onCreated(Processor processor)
+            {
+                processor.writeStage = write;
+            }
+        };
+        processors.addListener(listener);
+
+        final ScheduledExecutorService progress = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable r)
+            {
+                Thread thread = new Thread(r, "codegen-progress");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        progress.scheduleAtFixedRate(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                Main.out("Pipeline: scanned " + filesScanned + " | " + parse.getStatus() + " | " + generate.getStatus() + " | " + write.getStatus());
+            }
+        }, PROGRESS_INTERVAL, PROGRESS_INTERVAL, TimeUnit.SECONDS);
+
+        final long start = System.nanoTime();
+        try
+        {
+            scan(sourceFolder);
+
+            //Stages are finished in order so each one has received all of its work
+            parse.finish();
+            generate.finish();
+            write.finish();
+        }
+        finally
+        {
+            progress.shutdownNow();
+            processors.removeListener(listener);
+            for (Processor processor : processors.getProcessors())
+            {
+                processor.writeStage = null;
+            }
+        }
+
+        Main.out("");
+        Main.out(String.format("Pipeline finished in %.2fs, %d files scanned", (System.nanoTime() - start) / 1e9, filesScanned));
+        Main.out("  " + parse.getReport());
+        Main.out("  " + generate.getReport());
+        Main.out("  " + write.getReport());
+    }
+
+    private void scan(Path directory)
+    {
+        for (final Path file : Main.listFiles(directory))
+        {
+            if (Files.isDirectory(file))
+            {
+                scan(file);
+            }
+            else
+            {
+                filesScanned++;
+                parse.submit(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        parse(file);
+                    }
+                });
+            }
+        }
+    }
+
+    private void parse(Path file)
+    {
+        try
+        {
+            final ClassHeader header = Main.readHeader(file, processors);
+            if (header != null)
+            {
+                generate.submit(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        generate(header);
+                    }
+                });
+            }
+        }
+        catch (IOException e)
+        {
+            Main.error("Unexpected exception while parsing " + file, e);
+        }
+    }
+
+    private void generate(ClassHeader header)
+    {
+        try
+        {
+            Main.handleHeader(header, processors, outputFolder, manifest, "   |");
+        }
+        catch (IOException e)
+        {
+            Main.error("Unexpected exception while generating from " + header.file, e);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.builtbroken.mc.codegen.pipeline;
+
+import com.builtbroken.mc.codegen.Main;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single stage of the {@link GeneratorPipeline}, a fixed thread pool fed by a bounded queue.
+ * <p>
+ * When the queue is full the submitting thread waits for space, this keeps the amount of
+ * work held in memory flat no matter how large the source tree is.
+ *
+ * @see <a href="https://github.com/BuiltBrokenModding/VoltzEngine/blob/development/license.md">License</a> for what you can and can't do with the code.
+ */
+public class Stage
+{
+    public final String name;
+    public final int threads;
+    public final int queueSize;
+
+    private final BlockingQueue<Runnable> queue;
+    private final ThreadPoolExecutor executor;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong busyNanos = new AtomicLong();
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+
+    private final AtomicLong startTime = new AtomicLong();
+    private long endTime;
+
+    public Stage(final String name, int threads, int queueSize)
+    {
+        this.name = name;
+        this.threads = Math.max(1, threads);
+        this.queueSize = Math.max(1, queueSize);
+        this.queue = new ArrayBlockingQueue(this.queueSize);
+        this.executor = new ThreadPoolExecutor(this.threads, this.threads, 0, TimeUnit.MILLISECONDS, queue, new ThreadFactory()
+        {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r)
+            {
+                Thread thread = new Thread(r, "codegen-" + name + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        }, new RejectedExecutionHandler()
+        {
+            @Override
+            public void rejectedExecution(Runnable r, ThreadPoolExecutor executor)
+            {
+                //Block until there is space, gives back pressure to the stage before
+                try
+                {
+                    if (executor.isShutdown())
+                    {
+                        throw new RejectedExecutionException("Stage " + name + " is shut down");
+                    }
+                    queue.put(r);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new RejectedExecutionException("Interrupted while waiting to submit to stage " + name, e);
+                }
+            }
+        });
+        this.executor.prestartAllCoreThreads();
+    }
+
+    /**
+     * Queues a task, waits if the queue is full
+     *
+     * @param task - task to run
+     */
+    public void submit(final Runnable task)
+    {
+        startTime.compareAndSet(0, System.nanoTime());
+        submitted.incrementAndGet();
+        executor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                final long start = System.nanoTime();
+                try
+                {
+                    task.run();
+                }
+                catch (Throwable t)
+                {
+                    Main.error("Unexpected error in " + name + " stage", t);
+                }
+                finally
+                {
+                    busyNanos.addAndGet(System.nanoTime() - start);
+                    completed.incrementAndGet();
+                }
+            }
+        });
+
+        int depth = queue.size();
+        int max;
+        while (depth > (max = maxQueueDepth.get()) && !maxQueueDepth.compareAndSet(max, depth))
+        {
+            //Retry until max is updated
+        }
+    }
+
+    /**
+     * Stops accepting tasks and waits for all queued tasks to finish
+     */
+    public void finish()
+    {
+        executor.shutdown();
+        try
+        {
+            while (!executor.awaitTermination(1, TimeUnit.SECONDS))
+            {
+                //Keep waiting, progress is reported by the pipeline
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        endTime = System.nanoTime();
+    }
+
+    public int getQueueDepth()
+    {
+        return queue.size();
+    }
+
+    public long getCompleted()
+    {
+        return completed.get();
+    }
+
+    /**
+     * Gets the current state of the stage for progress output
+     *
+     * @return status line
+     */
+    public String getStatus()
+    {
+        return name + ": queued " + queue.size() + "/" + queueSize + ", done " + completed.get() + "/" + submitted.get();
+    }
+
+    /**
+     * Gets the summary of the stage once finished
+     *
+     * @return report line
+     */
+    public String getReport()
+    {
+        final double wallSeconds = Math.max(1, endTime - startTime.get()) / 1e9;
+        final double busySeconds = busyNanos.get() / 1e9;
+        final double utilization = busySeconds / (wallSeconds * threads) * 100;
+        return String.format("%-8s threads %d, tasks %d, %.1f tasks/s, max queue %d/%d, busy %.2fs (%.0f%% of thread time)",
+                name, threads, completed.get(), completed.get() / wallSeconds, maxQueueDepth.get(), queueSize, busySeconds, utilization);
+    }
+}
@@ -2,14 +2,36 @@ package com.builtbroken.mc.codegen.processor;
 
 import com.builtbroken.mc.codegen.Main;
 import com.builtbroken.mc.codegen.data.BuildData;
+import com.builtbroken.mc.codegen.data.BuildManifest;
+import com.builtbroken.mc.codegen.data.GeneratedFile;
+import com.builtbroken.mc.codegen.data.RenderedTemplates;
+import com.builtbroken.mc.codegen.logging.Log;
+import com.builtbroken.mc.codegen.metrics.RunMetrics;
+import com.builtbroken.mc.codegen.output.FolderOutputSink;
+import com.builtbroken.mc.codegen.output.OutputSink;
+import com.builtbroken.mc.codegen.pipeline.Stage;
+import com.builtbroken.mc.codegen.template.Parser;
 import com.builtbroken.mc.codegen.template.Template;
+import com.builtbroken.mc.codegen.template.TemplateRegistry;
+import com.builtbroken.mc.codegen.template.data.Field;
+import com.builtbroken.mc.codegen.template.data.Method;
+
+import com.builtbroken.mc.codegen.utils.Utils;
 
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @see <a href="https://github.com/BuiltBrokenModding/VoltzEngine/blob/development/license.md">License</a> for what you can and can't do with the code.
@@ -18,6 +40,8 @@ import java.util.List;
 public abstract class Processor
 {
     protected final HashMap<String, Template> templateMap = new HashMap();
+    /** Template key to the file it was loaded from */
+    protected final HashMap<String, Path> templateFiles = new HashMap();
 
     /** Name of the annotation that defines this processor should be used */
     public final String annotationKey;
@@ -26,6 +50,28 @@ public abstract class Processor
 
     public final String classToExtend;
 
+    /** Number of files written to disk */
+    public final AtomicInteger filesWritten = new AtomicInteger();
+    /** Number of files not written as the existing file already matched */
+    public final AtomicInteger filesSkipped = new AtomicInteger();
+
+    /** Drop imports whose simple name is never used by the output class */
+    public boolean removeUnusedImports = true;
+
+    /** Stage to hand writes to when running as a pipeline, null to write on the calling thread */
+    public Stage writeStage;
+
+    /** Sink to hand generated files to, null to write them to the output folder */
+    public OutputSink outputSink;
+
+    /** Metrics to record render and write times to, null to not record */
+    public RunMetrics metrics;
+
+    /** Imports, interfaces and body rendered for each template combination */
+    public final RenderCache renderCache = new RenderCache(RenderCache.DEFAULT_SIZE);
+    /** True if the render hooks are not overridden, null until checked */
+    private Boolean defaultRenderHooks;
+
     /**
      * @param annotationKey - needs to be the exact name of the annotation
      */
@@ -63,7 +109,9 @@ public abstract class Processor
      * Called to do any actions that need to wait until all files have
      * been processed.
      * <p>
-     * This is normally used to generate registry files.
+     * This is normally used to generate registry files. Write generated classes with
+     * {@link #writeClass(File, String, String, String)} so they are archived and
+     * compiled with the other outputs, files written directly to the folder are not.
      *
      * @param outputFolder
      */
@@ -72,6 +120,92 @@ public abstract class Processor
 
     }
 
+    /**
+     * Called instead of {@link #handleFile(File, BuildData, String)} during incremental
+     * builds for a source whose outputs did not change since the last run. Only called if
+     * {@link #canSkipUpToDate()} returns true.
+     * <p>
+     * Processors that collect data for {@link #finalize(File)} should record the file
+     * here so registries still contain every source.
+     *
+     * @param outputFolder - folder the outputs were written to
+     * @param buildData    - data about the source, nothing is generated from it
+     * @param spacer       - current spacer for debug output
+     */
+    public void handleUpToDateFile(File outputFolder, BuildData buildData, String spacer)
+    {
+
+    }
+
+    /**
+     * Called in watch mode for a source that changed or was removed since it was last passed to
+     * the processor, before the new version is handled. Processors that collect data for
+     * {@link #finalize(File)} should drop what they recorded for the source here. Only called
+     * if {@link #canRemoveFiles()} returns true.
+     *
+     * @param outputFolder - folder the outputs were written to
+     * @param buildData    - data of the source as it was last handled, nothing is generated from it
+     * @param spacer       - current spacer for debug output
+     */
+    public void handleRemovedFile(File outputFolder, BuildData buildData, String spacer)
+    {
+
+    }
+
+    /**
+     * Checks if data collected for {@link #finalize(File)} can be updated one source at a time.
+     * If not, watch mode creates the processor again and passes it every source each time one
+     * of its sources changes. By default true unless finalize is overridden without
+     * {@link #handleRemovedFile(File, BuildData, String)}.
+     *
+     * @return true if changed sources only need to be removed and handled again
+     */
+    public boolean canRemoveFiles()
+    {
+        return !hasFinalize() || overrides("handleRemovedFile", File.class, BuildData.class, String.class);
+    }
+
+    /**
+     * Checks if sources that did not change since the last run can be skipped. Processors
+     * that override {@link #finalize(File)} need to see every source, so by default their
+     * sources are always generated again. Override together with
+     * {@link #handleUpToDateFile(File, BuildData, String)} to skip them.
+     *
+     * @return true if unchanged sources only need to be passed to handleUpToDateFile
+     */
+    public boolean canSkipUpToDate()
+    {
+        return !hasFinalize();
+    }
+
+    /**
+     * Checks if the processor overrides {@link #finalize(File)}
+     *
+     * @return true if finalize does anything
+     */
+    public boolean hasFinalize()
+    {
+        try
+        {
+            return getClass().getMethod("finalize", File.class).getDeclaringClass() != Processor.class;
+        }
+        catch (NoSuchMethodException e)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Gets the names of the settings read in {@link #initialized(File, HashMap)}, used by
+     * front ends that need to declare the options they accept
+     *
+     * @return setting names, empty if none are read
+     */
+    public Set<String> getSupportedSettings()
+    {
+        return Collections.emptySet();
+    }
+
     /**
      * Called to build the file and write it to disk
      *
@@ -81,6 +215,9 @@ public abstract class Processor
      */
     protected void build(final File outputFolder, final List<Template> templates, BuildData buildData, final String spacer)
     {
+        final long start = System.nanoTime();
+        final long cpu = metrics != null ? RunMetrics.threadCpuTime() : 0;
+
         //Start building file
         StringBuilder builder = new StringBuilder();
 
@@ -115,56 +252,247 @@ public abstract class Processor
             buildData.outputClassPackage = buildData.classPackage;
         }
 
+        //Get parts rendered from the templates, shared between outputs using the same templates
+        if (renderCache.getMaxSize() > 0 && canCacheRender(templates, buildData))
+        {
+            buildData.renderedTemplates = getRenderedTemplates(templates, buildData);
+        }
+
+        //Warned for each output, the duplicates are shared with the rendered parts
+        final List<String> duplicates = buildData.renderedTemplates != null ? buildData.renderedTemplates.duplicates : findDuplicateMembers(templates);
+        for (String duplicate : duplicates)
+        {
+            Main.warn(duplicate + " is already declared by another template used for " + buildData.outputClassName);
+        }
+
         //Write package
         builder.append("package " + buildData.outputClassPackage + ";\n");
         builder.append("\n");
 
-        //Write imports
-        createImports(builder, templates, buildData);
-        builder.append("\n");
+        //Class is rendered first so imports can be checked against it
+        final StringBuilder classBuilder = new StringBuilder();
 
         //Write class header
-        createClassHeader(builder, templates, buildData);
+        createClassHeader(classBuilder, templates, buildData);
 
         //Body start
-        builder.append("\n{\n");
+        classBuilder.append("\n{\n");
 
         //Writer constructor
-        createConstructor(builder, templates, buildData);
+        createConstructor(classBuilder, templates, buildData);
+        final int bodyStart = classBuilder.length();
 
         //Write body
-        createBody(builder, templates, buildData);
+        createBody(classBuilder, templates, buildData);
 
         //Body end
-        builder.append("}");
+        classBuilder.append("}");
+
+        //Collect names used by the class, names in the shared body are only collected once
+        if (removeUnusedImports)
+        {
+            buildData.referencedNames = new HashSet();
+            if (buildData.renderedTemplates != null)
+            {
+                Parser.collectIdentifiers(classBuilder.subSequence(0, bodyStart), buildData.referencedNames);
+                buildData.referencedNames.addAll(buildData.renderedTemplates.bodyNames);
+            }
+            else
+            {
+                Parser.collectIdentifiers(classBuilder, buildData.referencedNames);
+            }
+        }
+
+        //Write imports
+        createImports(builder, templates, buildData);
+        builder.append("\n");
+
+        builder.append(classBuilder);
+
+        //Record output so incremental builds know what this source created
+        final String path = buildData.outputClassPackage.replace(".", "/") + "/" + buildData.outputClassName + ".java";
+        final String content = builder.toString();
+        final byte[] data = content.getBytes();
+        buildData.outputFiles.put(path, Utils.hash(data));
+
+        final List<String> templateKeys = new ArrayList();
+        final Set<String> templateRefs = new TreeSet();
+        for (Template template : templates)
+        {
+            templateKeys.add(template.getKey());
+            templateRefs.add(getTemplateRef(template.getKey()));
+        }
+        buildData.outputTemplates.put(path, templateRefs);
+        final GeneratedFile file = new GeneratedFile(path, buildData.outputClassPackage + "." + buildData.outputClassName, content, data,
+                buildData.classPackage + "." + buildData.className, templateKeys);
+        if (metrics != null)
+        {
+            metrics.render.add(System.nanoTime() - start, RunMetrics.threadCpuTime() - cpu);
+        }
 
         //Write file to disk
+        if (writeStage != null)
+        {
+            writeStage.submit(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    writeFile(outputFolder, file, spacer);
+                }
+            });
+        }
+        else
+        {
+            writeFile(outputFolder, file, spacer);
+        }
+    }
+
+    /**
+     * Called from {@link #finalize(File)} to write a generated class, such as a registry,
+     * through the output sink
+     *
+     * @param outputFolder - folder passed to finalize
+     * @param classPackage - package of the class, empty for the default package
+     * @param className    - name of the class
+     * @param content      - source of the class
+     * @throws UncheckedIOException if the sink failed to write the file
+     */
+    protected void writeClass(File outputFolder, String classPackage, String className, String content)
+    {
+        final String qualifiedName = classPackage.isEmpty() ? className : classPackage + "." + className;
+        final String path = qualifiedName.replace(".", "/") + ".java";
+        writeFile(outputFolder, new GeneratedFile(path, qualifiedName, content, content.getBytes(), getClass().getName(), new ArrayList()), "  ");
+    }
+
+    /**
+     * Called to hand a generated file to the output sink
+     *
+     * @param outputFolder - folder to write to if no output sink is set
+     * @param file         - generated file
+     * @param spacer       - spacer to make debug look nice
+     * @throws UncheckedIOException if the sink failed to write the file
+     */
+    protected void writeFile(File outputFolder, GeneratedFile file, String spacer)
+    {
+        final long start = System.nanoTime();
+        final long cpu = metrics != null ? RunMetrics.threadCpuTime() : 0;
         try
         {
-            File outFile;
-            //If contains dot the class name starts with a package path
-            outFile = new File(outputFolder, buildData.outputClassPackage.replace(".", File.separator) + File.separator + buildData.outputClassName + ".java");
-            Main.out(spacer + "  Writing file to disk, file = " + outFile);
-            if (!outFile.getParentFile().exists())
+            if (Log.isDebug())
+            {
+                Log.debug(spacer + "  Writing file, file = " + file.path);
+            }
+            final OutputSink sink = outputSink != null ? outputSink : new FolderOutputSink(outputFolder);
+            if (sink.write(file))
             {
-                outFile.getParentFile().mkdirs();
-                Main.out(spacer + "   Created directories");
+                filesWritten.incrementAndGet();
             }
-            else if (outFile.exists())
+            else
             {
-                Main.out(spacer + "   Overriding existing file");
+                filesSkipped.incrementAndGet();
+                if (Log.isDebug())
+                {
+                    Log.debug(spacer + "   Existing file is the same, skipped writing");
+                }
             }
+        }
+        catch (IOException e)
+        {
+            //Thrown unchecked as build does not throw, callers report it with the file that was being handled
+            throw new UncheckedIOException("Failed to write generated file " + file.path, e);
+        }
+        if (metrics != null)
+        {
+            metrics.write.add(System.nanoTime() - start, RunMetrics.threadCpuTime() - cpu);
+        }
+    }
 
-            FileWriter fileWriter = new FileWriter(outFile);
-            fileWriter.write(builder.toString());
-            fileWriter.flush();
-            fileWriter.close();
+    /**
+     * Gets the imports, interfaces and body for the templates from
+     * the cache, rendering them if not cached.
+     *
+     * @param templates - templates used for the output
+     * @param buildData - data of the first output to use the combination
+     * @return rendered template parts
+     */
+    protected RenderedTemplates getRenderedTemplates(List<Template> templates, BuildData buildData)
+    {
+        StringBuilder key = new StringBuilder(classToExtend);
+        for (Template template : templates)
+        {
+            key.append('|');
+            key.append(template.getKey());
         }
-        catch (Exception e)
+        final String cacheKey = key.toString();
+
+        RenderedTemplates rendered = renderCache.get(cacheKey);
+        if (rendered == null)
         {
-            Main.error(spacer + "    Error writing file", e);
-            System.exit(1);
+            final Set<String> imports = new LinkedHashSet();
+            collectImports(imports, templates, buildData);
+
+            final StringBuilder interfaces = new StringBuilder();
+            createInterfaces(interfaces, templates, buildData);
+
+            final StringBuilder body = new StringBuilder();
+            renderBody(body, templates, buildData);
+
+            final Set<String> bodyNames = new HashSet();
+            Parser.collectIdentifiers(body, bodyNames);
+
+            rendered = new RenderedTemplates(new ArrayList(imports), interfaces.toString(), body.toString(), bodyNames, findDuplicateMembers(templates));
+            renderCache.put(cacheKey, rendered);
         }
+        return rendered;
+    }
+
+    /**
+     * Checks if the template parts of the output can be shared with other
+     * outputs using the same templates. The cache is keyed on the templates only,
+     * so it is used by default unless the processor overrides
+     * {@link #collectImports(Set, List, BuildData)}, {@link #createInterfaces(StringBuilder, List, BuildData)}
+     * or {@link #renderBody(StringBuilder, List, BuildData)}. Override and return false if
+     * those depend on the build data, or true if overridden ones do not.
+     *
+     * @param templates - templates used for the output
+     * @param buildData - data about the output
+     * @return true to use the render cache
+     */
+    protected boolean canCacheRender(List<Template> templates, BuildData buildData)
+    {
+        if (defaultRenderHooks == null)
+        {
+            defaultRenderHooks = !overrides("collectImports", Set.class, List.class, BuildData.class)
+                    && !overrides("collectImports", List.class, List.class, BuildData.class)
+                    && !overrides("createInterfaces", StringBuilder.class, List.class, BuildData.class)
+                    && !overrides("renderBody", StringBuilder.class, List.class, BuildData.class);
+        }
+        return defaultRenderHooks;
+    }
+
+    /**
+     * Checks if a subclass declares the method
+     *
+     * @param name       - name of the method
+     * @param parameters - parameter types of the method
+     * @return true if declared below {@link Processor}
+     */
+    private boolean overrides(String name, Class... parameters)
+    {
+        for (Class clazz = getClass(); clazz != Processor.class; clazz = clazz.getSuperclass())
+        {
+            try
+            {
+                clazz.getDeclaredMethod(name, parameters);
+                return true;
+            }
+            catch (NoSuchMethodException e)
+            {
+                //Check the parent
+            }
+        }
+        return false;
     }
 
     /**
@@ -175,22 +503,27 @@ public abstract class Processor
      */
     protected void createImports(StringBuilder builder, List<Template> templates, BuildData buildData)
     {
-        //Get imports to use
-        final List<String> imports = new ArrayList();
+        //Get imports to use, ordered and without duplicates
+        final Set<String> imports = new LinkedHashSet();
         //Add import to class we are wrapping
         imports.add(buildData.classPackage + "." + buildData.className);
-        collectImports(imports, templates, buildData);
+        if (buildData.renderedTemplates != null)
+        {
+            imports.addAll(buildData.renderedTemplates.imports);
+        }
+        else
+        {
+            collectImports(imports, templates, buildData);
+        }
 
         //Get imports to ignore
-        final List<String> ignored = new ArrayList();
+        final Set<String> ignored = new HashSet();
         collectIgnoredImports(ignored, templates, buildData);
 
-        //TODO ensure all imports are used
-
         //Output imports
         for (String imp : imports)
         {
-            if (!ignored.contains(imp))
+            if (!ignored.contains(imp) && isImportUsed(imp, buildData))
             {
                 builder.append("import ");
                 builder.append(imp);
@@ -199,27 +532,53 @@ public abstract class Processor
         }
     }
 
+    /**
+     * Checks if the import is referenced by the class
+     *
+     * @param imp       - import, without the import keyword
+     * @param buildData - data containing the names used by the class
+     * @return true if used or if names were not collected
+     */
+    protected boolean isImportUsed(String imp, BuildData buildData)
+    {
+        if (buildData.referencedNames == null)
+        {
+            return true;
+        }
+        final String name = imp.substring(imp.lastIndexOf('.') + 1).trim();
+        return name.equals("*") || buildData.referencedNames.contains(name);
+    }
+
     /**
      * Called to collect imports that may be needed
      *
-     * @param imports
-     * @param templates
+     * @param imports   - place to add imports to, ordered and without duplicates
+     * @param templates - templates used for the output
      */
+    protected void collectImports(Set<String> imports, List<Template> templates, BuildData buildData)
+    {
+        //Collected through the list version so processors that override it still work
+        final List<String> list = new ArrayList(imports);
+        collectImports(list, templates, buildData);
+        imports.clear();
+        imports.addAll(list);
+    }
+
+    /**
+     * Called to collect imports that may be needed
+     *
+     * @param imports   - place to add imports to, may contain duplicates
+     * @param templates - templates used for the output
+     * @deprecated override {@link #collectImports(Set, List, BuildData)} instead, only called by its default implementation
+     */
+    @Deprecated
     protected void collectImports(List<String> imports, List<Template> templates, BuildData buildData)
     {
         for (Template template : templates)
         {
             if (template != null)
             {
-                List<String> importsFromProcessor = template.getImports();
-                for (String imp : importsFromProcessor)
-                {
-                    //Prevent duplication
-                    if (!imports.contains(imp))
-                    {
-                        imports.add(imp);
-                    }
-                }
+                imports.addAll(template.getImports());
             }
         }
     }
@@ -230,6 +589,23 @@ public abstract class Processor
      * @param imports   - place to add imports to ignore
      * @param templates - templates to check against
      */
+    protected void collectIgnoredImports(Set<String> imports, List<Template> templates, BuildData buildData)
+    {
+        //Collected through the list version so processors that override it still work
+        final List<String> list = new ArrayList(imports);
+        collectIgnoredImports(list, templates, buildData);
+        imports.clear();
+        imports.addAll(list);
+    }
+
+    /**
+     * Called to get imports that should be ignored from output file
+     *
+     * @param imports   - place to add imports to ignore
+     * @param templates - templates to check against
+     * @deprecated override {@link #collectIgnoredImports(Set, List, BuildData)} instead, only called by its default implementation
+     */
+    @Deprecated
     protected void collectIgnoredImports(List<String> imports, List<Template> templates, BuildData buildData)
     {
 
@@ -248,6 +624,24 @@ public abstract class Processor
         builder.append("public class " + buildData.outputClassName + " extends " + classToExtend);
 
         //Add implements
+        if (buildData.renderedTemplates != null)
+        {
+            builder.append(buildData.renderedTemplates.interfaces);
+        }
+        else
+        {
+            createInterfaces(builder, templates, buildData);
+        }
+    }
+
+    /**
+     * Called to create the implements part of the class header
+     *
+     * @param builder
+     * @param templates
+     */
+    protected void createInterfaces(StringBuilder builder, List<Template> templates, BuildData buildData)
+    {
         List<String> interfaces = new ArrayList();
 
         for (Template template : templates)
@@ -294,6 +688,58 @@ public abstract class Processor
      * @param templates
      */
     protected void createBody(StringBuilder builder, List<Template> templates, BuildData buildData)
+    {
+        if (buildData.renderedTemplates != null)
+        {
+            builder.append(buildData.renderedTemplates.body);
+        }
+        else
+        {
+            renderBody(builder, templates, buildData);
+        }
+    }
+
+    /**
+     * Finds fields and methods declared by more than one of the templates
+     *
+     * @param templates - templates used for the output
+     * @return description of each duplicate member and the template it is from
+     */
+    protected List<String> findDuplicateMembers(List<Template> templates)
+    {
+        final List<String> duplicates = new ArrayList();
+        final Set<String> fieldNames = new HashSet();
+        final Set<String> methodSignatures = new HashSet();
+        for (Template template : templates)
+        {
+            for (Field field : template.getFields())
+            {
+                if (!fieldNames.add(field.name))
+                {
+                    duplicates.add("Field '" + field.name + "' from template " + template.getKey());
+                }
+            }
+        }
+        for (Template template : templates)
+        {
+            for (Method method : template.getMethods())
+            {
+                if (!methodSignatures.add(method.signature))
+                {
+                    duplicates.add("Method '" + method.signature + "' from template " + template.getKey());
+                }
+            }
+        }
+        return duplicates;
+    }
+
+    /**
+     * Called to render the fields and methods of the templates
+     *
+     * @param builder
+     * @param templates
+     */
+    protected void renderBody(StringBuilder builder, List<Template> templates, BuildData buildData)
     {
         for (Template template : templates)
         {
@@ -303,15 +749,9 @@ public abstract class Processor
                 builder.append(template.getKey());
                 builder.append("\n");
 
-                String[] fields = template.fieldBody.split(";");
-                for (String field : fields)
+                for (Field field : template.getFields())
                 {
-                    if (!field.isEmpty())
-                    {
-                        builder.append("\t");
-                        builder.append(field.trim());
-                        builder.append(";\n");
-                    }
+                    builder.append(field.fragment);
                 }
             }
         }
@@ -340,48 +780,89 @@ public abstract class Processor
      */
     public void loadTemplates(File directory, int depth)
     {
-        String spacer;
-        StringBuilder builder = new StringBuilder();
-        for (int i = 0; i <= depth; i++)
+        TemplateRegistry registry = new TemplateRegistry(null);
+        try
+        {
+            registry.loadFolder(directory, depth);
+        }
+        catch (IOException e)
         {
-            builder.append("  ");
+            throw new UncheckedIOException(e);
         }
-        spacer = builder.toString();
+        loadTemplates(registry);
+    }
+
+    /**
+     * Gets the reference stored in the build manifest for a template of this processor
+     *
+     * @param key - template key
+     * @return reference
+     */
+    public String getTemplateRef(String key)
+    {
+        return BuildManifest.getTemplateRef(getClass().getName(), key);
+    }
+
+    /**
+     * Gets the files the loaded templates came from
+     *
+     * @return template key to file
+     */
+    public Map<String, Path> getTemplateFiles()
+    {
+        return templateFiles;
+    }
 
-        Main.out(spacer + "*Directory: " + directory.getName());
+    /**
+     * Called to replace the loaded templates with those in the registry,
+     * used when template files change while running in watch mode.
+     *
+     * @param registry - registry of parsed template files
+     */
+    public void reloadTemplates(TemplateRegistry registry)
+    {
+        templateMap.clear();
+        templateFiles.clear();
+        renderCache.clear();
+        loadTemplates(registry);
+    }
 
-        File[] files = directory.listFiles();
-        for (File file : files)
+    /**
+     * Called to load templates from the shared registry.
+     * <p>
+     * Only template files that carry {@link #templateAnnotationKey} and extend
+     * {@link #classToExtend} are used.
+     *
+     * @param registry - registry of parsed template files
+     */
+    public void loadTemplates(TemplateRegistry registry)
+    {
+        for (TemplateRegistry.Entry entry : registry.getTemplates(templateAnnotationKey))
         {
-            if (file.isDirectory())
+            if (Log.isDebug())
             {
-                loadTemplates(file, ++depth);
+                Log.debug("");
+                Log.debug("  --File: " + Utils.getName(entry.file));
+                Log.debug("   |------------------------->");
             }
-            else
+            if (entry.data.classExtending != null && !entry.data.classExtending.equals(classToExtend))
             {
-                Main.out("");
-                Main.out(spacer + "--File: " + file.getName());
-                Main.out(spacer + " |------------------------->");
-                Template template = new Template(templateAnnotationKey, classToExtend);
-                try
+                if (Log.isDebug())
                 {
-
-                    template = template.loadFile(file, spacer + " | ");
-                    //If returns null the file was not a template
-                    if (template != null)
-                    {
-                        if (template.isValid())
-                        {
-                            templateMap.put(template.getKey(), template);
-                        }
-                    }
+                    Log.debug("   |   Skipped, extends " + entry.data.classExtending + " not " + classToExtend);
                 }
-                catch (Exception e)
+            }
+            else
+            {
+                Template template = new Template(templateAnnotationKey, classToExtend).load(entry.data, "   | ");
+                //If returns null the file was not a template
+                if (template != null && template.isValid())
                 {
-                    Main.error("Unexpected error while loading template from file " + file, e);
+                    templateMap.put(template.getKey(), template);
+                    templateFiles.put(template.getKey(), entry.file);
                 }
-                Main.out(spacer + " |------------------------->");
             }
+            Log.debug("   |------------------------->");
         }
     }
 }
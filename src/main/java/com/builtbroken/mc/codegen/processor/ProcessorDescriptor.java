@@ -0,0 +1,146 @@
+package com.builtbroken.mc.codegen.processor;
+
+import com.builtbroken.mc.codegen.Main;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+/**
+ * Lightweight description of a {@link Processor} so it can be indexed without creating it.
+ * <p>
+ * Processor jars list their descriptors in
+ * META-INF/services/com.builtbroken.mc.codegen.processor.ProcessorDescriptor, each
+ * with a no argument constructor passing the annotation key and processor class to this
+ * constructor. The processor is only created, and its templates loaded, once a source file
+ * with its annotation is found.
+ *
+ * @see <a href="https://github.com/BuiltBrokenModding/VoltzEngine/blob/development/license.md">License</a> for what you can and can't do with the code.
+ */
+public class ProcessorDescriptor
+{
+    /** Name of the annotation that defines the processor should be used */
+    public final String annotationKey;
+    /** Class name of the processor */
+    public final String processorClass;
+
+    public ProcessorDescriptor(String annotationKey, String processorClass)
+    {
+        this.annotationKey = annotationKey;
+        this.processorClass = processorClass;
+    }
+
+    /**
+     * Creates the processor, called once per run and again each time watch mode resets it
+     *
+     * @return new processor
+     * @throws ReflectiveOperationException if the class is missing or has no usable no argument constructor
+     */
+    public Processor create() throws ReflectiveOperationException
+    {
+        return (Processor) Class.forName(processorClass, true, getClass().getClassLoader()).getDeclaredConstructor().newInstance();
+    }
+
+    /**
+     * Creates a descriptor for a processor class that has none registered. The processor has to
+     * be created to read its annotation key, that instance is returned by the first call to
+     * {@link #create()} so it is not created twice. Its templates are still only loaded once a
+     * source file uses it.
+     *
+     * @param processorClass - class name of the processor
+     * @param loader         - class loader to load the class from
+     * @return descriptor
+     * @throws ReflectiveOperationException if the class is missing or has no usable no argument constructor
+     */
+    public static ProcessorDescriptor forClass(String processorClass, ClassLoader loader) throws ReflectiveOperationException
+    {
+        final Processor processor = (Processor) Class.forName(processorClass, true, loader).getDeclaredConstructor().newInstance();
+        return new ProcessorDescriptor(processor.annotationKey, processorClass)
+        {
+            private Processor first = processor;
+
+            @Override
+            public synchronized Processor create() throws ReflectiveOperationException
+            {
+                if (first != null)
+                {
+                    final Processor created = first;
+                    first = null;
+                    return created;
+                }
+                return super.create();
+            }
+        };
+    }
+
+    /**
+     * Gets the descriptor for a processor class, using the registered one if found
+     *
+     * @param found          - registered descriptors
+     * @param processorClass - class name of the processor
+     * @param loader         - class loader to load the class from if it has no descriptor
+     * @return descriptor
+     * @throws ReflectiveOperationException if the class is missing or has no usable no argument constructor
+     */
+    public static ProcessorDescriptor find(List<ProcessorDescriptor> found, String processorClass, ClassLoader loader) throws ReflectiveOperationException
+    {
+        for (ProcessorDescriptor descriptor : found)
+        {
+            if (descriptor.processorClass.equals(processorClass))
+            {
+                return descriptor;
+            }
+        }
+        return forClass(processorClass, loader);
+    }
+
+    /**
+     * Wraps a processor that was already created, used for processors without a descriptor
+     *
+     * @param processor - processor
+     * @return descriptor returning the processor
+     */
+    public static ProcessorDescriptor of(final Processor processor)
+    {
+        return new ProcessorDescriptor(processor.annotationKey, processor.getClass().getName())
+        {
+            @Override
+            public Processor create()
+            {
+                return processor;
+            }
+        };
+    }
+
+    /**
+     * Finds all descriptors registered as services
+     *
+     * @param loader - class loader to search
+     * @return descriptors in the order they were found
+     */
+    public static List<ProcessorDescriptor> discover(ClassLoader loader)
+    {
+        final List<ProcessorDescriptor> descriptors = new ArrayList();
+        final Iterator<ProcessorDescriptor> it = ServiceLoader.load(ProcessorDescriptor.class, loader).iterator();
+        while (it.hasNext())
+        {
+            try
+            {
+                descriptors.add(it.next());
+            }
+            catch (ServiceConfigurationError e)
+            {
+                Main.warn("Failed to load processor descriptor. Error: " + e);
+            }
+        }
+        return descriptors;
+    }
+
+    @Override
+    public String toString()
+    {
+        return processorClass + "[@" + annotationKey + "]";
+    }
+}
@@ -0,0 +1,327 @@
+package com.builtbroken.mc.codegen.processor;
+
+import com.builtbroken.mc.codegen.metrics.RunMetrics;
+import com.builtbroken.mc.codegen.scan.AnnotationPrefilter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Lookup of annotation name to the processors that handle it.
+ * <p>
+ * Built once after all processors are registered so each source file only
+ * needs one lookup per annotation it has, instead of checking every processor.
+ * Processors are registered by {@link ProcessorDescriptor} and created through the
+ * {@link Loader} the first time a file with their annotation is collected.
+ *
+ * @see <a href="https://github.com/BuiltBrokenModding/VoltzEngine/blob/development/license.md">License</a> for what you can and can't do with the code.
+ */
+public class ProcessorIndex
+{
+    /** All registered processors in the order they were registered */
+    public final List<ProcessorDescriptor> descriptors;
+
+    /** Matches the annotation keys of all registered processors, used to skip files without any */
+    public final AnnotationPrefilter prefilter;
+
+    /** Metrics of the run the processors belong to, null if not collected */
+    public RunMetrics metrics;
+
+    private final Loader loader;
+    private final Map<String, List<ProcessorDescriptor>> annotationToDescriptors = new HashMap();
+    private final Map<ProcessorDescriptor, Integer> order = new HashMap();
+
+    /** Processors created so far */
+    private final Map<ProcessorDescriptor, Processor> created = new ConcurrentHashMap();
+    /** Processors that failed to be created, not tried again */
+    private final Set<ProcessorDescriptor> failed = Collections.newSetFromMap(new ConcurrentHashMap<ProcessorDescriptor, Boolean>());
+    private final List<Listener> listeners = new ArrayList();
+
+    /**
+     * Creates an index of processors that are already created and loaded
+     *
+     * @param processors - processors in order
+     */
+    public ProcessorIndex(List<Processor> processors)
+    {
+        this(wrap(processors), null);
+        for (int i = 0; i < processors.size(); i++)
+        {
+            created.put(descriptors.get(i), processors.get(i));
+        }
+    }
+
+    /**
+     * Creates an index of processors that are created on first use
+     *
+     * @param descriptors - processors in order
+     * @param loader      - creates and loads the processors
+     */
+    public ProcessorIndex(List<ProcessorDescriptor> descriptors, Loader loader)
+    {
+        this.descriptors = Collections.unmodifiableList(new ArrayList(descriptors));
+        this.loader = loader;
+        for (int i = 0; i < descriptors.size(); i++)
+        {
+            ProcessorDescriptor descriptor = descriptors.get(i);
+            order.put(descriptor, i);
+            List<ProcessorDescriptor> list = annotationToDescriptors.get(descriptor.annotationKey);
+            if (list == null)
+            {
+                list = new ArrayList();
+                annotationToDescriptors.put(descriptor.annotationKey, list);
+            }
+            list.add(descriptor);
+        }
+        this.prefilter = new AnnotationPrefilter(annotationToDescriptors.keySet());
+    }
+
+    private static List<ProcessorDescriptor> wrap(List<Processor> processors)
+    {
+        final List<ProcessorDescriptor> descriptors = new ArrayList();
+        for (Processor processor : processors)
+        {
+            descriptors.add(ProcessorDescriptor.of(processor));
+        }
+        return descriptors;
+    }
+
+    /**
+     * Gets the processors that handle the annotation, creating them if needed
+     *
+     * @param annotation - name of the annotation, without the @
+     * @return processors, or null if none
+     */
+    public List<Processor> get(String annotation)
+    {
+        List<ProcessorDescriptor> list = annotationToDescriptors.get(annotation);
+        if (list == null)
+        {
+            return null;
+        }
+        final List<Processor> processors = new ArrayList();
+        for (ProcessorDescriptor descriptor : list)
+        {
+            Processor processor = getProcessor(descriptor);
+            if (processor != null)
+            {
+                processors.add(processor);
+            }
+        }
+        return processors;
+    }
+
+    /**
+     * Collects the processors for all annotations in registration order,
+     * creating them if needed
+     *
+     * @param annotations - names of the annotations on a file
+     * @return processors, empty if the file has no processor annotations
+     */
+    public List<Processor> collect(Iterable<String> annotations)
+    {
+        List<ProcessorDescriptor> result = null;
+        for (String annotation : annotations)
+        {
+            List<ProcessorDescriptor> list = annotationToDescriptors.get(annotation);
+            if (list != null)
+            {
+                if (result == null)
+                {
+                    result = new ArrayList(list);
+                }
+                else
+                {
+                    for (ProcessorDescriptor descriptor : list)
+                    {
+                        if (!result.contains(descriptor))
+                        {
+                            result.add(descriptor);
+                        }
+                    }
+                }
+            }
+        }
+        if (result == null)
+        {
+            return Collections.emptyList();
+        }
+        if (result.size() > 1)
+        {
+            Collections.sort(result, new Comparator<ProcessorDescriptor>()
+            {
+                @Override
+                public int compare(ProcessorDescriptor a, ProcessorDescriptor b)
+                {
+                    return Integer.compare(order.get(a), order.get(b));
+                }
+            });
+        }
+        final List<Processor> processors = new ArrayList(result.size());
+        for (ProcessorDescriptor descriptor : result)
+        {
+            Processor processor = getProcessor(descriptor);
+            if (processor != null)
+            {
+                processors.add(processor);
+            }
+        }
+        return processors;
+    }
+
+    /**
+     * Gets the processor of the descriptor, creating it if this is the first use
+     *
+     * @param descriptor - registered descriptor
+     * @return processor, or null if it failed to be created
+     */
+    public Processor getProcessor(ProcessorDescriptor descriptor)
+    {
+        Processor processor = created.get(descriptor);
+        if (processor == null && !failed.contains(descriptor))
+        {
+            processor = create(descriptor);
+        }
+        return processor;
+    }
+
+    private synchronized Processor create(ProcessorDescriptor descriptor)
+    {
+        //Checked again as another thread may have created it while waiting
+        Processor processor = created.get(descriptor);
+        if (processor == null && !failed.contains(descriptor))
+        {
+            processor = loader != null ? loader.load(descriptor) : null;
+            if (processor == null)
+            {
+                failed.add(descriptor);
+            }
+            else
+            {
+                created.put(descriptor, processor);
+                for (Listener listener : listeners)
+                {
+                    listener.onCreated(processor);
+                }
+            }
+        }
+        return processor;
+    }
+
+    /**
+     * Creates the processor again through the loader so it starts without any
+     * data collected from earlier files
+     *
+     * @param processor - created processor
+     * @return new processor, or the same processor if it could not be created again
+     */
+    public synchronized Processor reset(Processor processor)
+    {
+        for (ProcessorDescriptor descriptor : descriptors)
+        {
+            if (created.get(descriptor) == processor)
+            {
+                final Processor fresh = loader != null ? loader.load(descriptor) : null;
+                if (fresh == null || fresh == processor)
+                {
+                    return processor;
+                }
+                created.put(descriptor, fresh);
+                for (Listener listener : listeners)
+                {
+                    listener.onCreated(fresh);
+                }
+                return fresh;
+            }
+        }
+        return processor;
+    }
+
+    /**
+     * Creates all processors that were not used yet
+     */
+    public void createAll()
+    {
+        for (ProcessorDescriptor descriptor : descriptors)
+        {
+            getProcessor(descriptor);
+        }
+    }
+
+    /**
+     * Gets the processors created so far in registration order
+     *
+     * @return processors
+     */
+    public List<Processor> getProcessors()
+    {
+        final List<Processor> processors = new ArrayList();
+        for (ProcessorDescriptor descriptor : descriptors)
+        {
+            Processor processor = created.get(descriptor);
+            if (processor != null)
+            {
+                processors.add(processor);
+            }
+        }
+        return processors;
+    }
+
+    /**
+     * Adds a listener that is called for each processor created. Called
+     * right away for processors that were already created.
+     *
+     * @param listener - listener to add
+     */
+    public synchronized void addListener(Listener listener)
+    {
+        listeners.add(listener);
+        for (Processor processor : getProcessors())
+        {
+            listener.onCreated(processor);
+        }
+    }
+
+    public synchronized void removeListener(Listener listener)
+    {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Gets the names of all annotations that have a processor
+     *
+     * @return annotation names
+     */
+    public Set<String> getAnnotationKeys()
+    {
+        return annotationToDescriptors.keySet();
+    }
+
+    /**
+     * Creates and loads processors on first use
+     */
+    public interface Loader
+    {
+        /**
+         * Creates the processor, sets it up for the run and loads its templates
+         *
+         * @param descriptor - processor to create
+         * @return processor, or null if it could not be created
+         */
+        Processor load(ProcessorDescriptor descriptor);
+    }
+
+    /**
+     * Called as processors are created
+     */
+    public interface Listener
+    {
+        void onCreated(Processor processor);
+    }
+}
@@ -0,0 +1,104 @@
+package com.builtbroken.mc.codegen.processor;
+
+import com.builtbroken.mc.codegen.data.RenderedTemplates;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Size limited cache of rendered template combinations, least recently used entries are removed first.
+ * <p>
+ * Keyed by the class being extended and the ordered list of template keys.
+ *
+ * @see <a href="https://github.com/BuiltBrokenModding/VoltzEngine/blob/development/license.md">License</a> for what you can and can't do with the code.
+ */
+public class RenderCache
+{
+    public static final int DEFAULT_SIZE = 256;
+
+    public final AtomicLong hits = new AtomicLong();
+    public final AtomicLong misses = new AtomicLong();
+
+    private int maxSize;
+    private final LinkedHashMap<String, RenderedTemplates> entries = new LinkedHashMap<String, RenderedTemplates>(16, 0.75f, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, RenderedTemplates> eldest)
+        {
+            return size() > maxSize;
+        }
+    };
+
+    public RenderCache(int maxSize)
+    {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Gets the cached entry, counts as a hit or miss
+     *
+     * @param key - key of the template combination
+     * @return entry, or null if not cached
+     */
+    public synchronized RenderedTemplates get(String key)
+    {
+        RenderedTemplates entry = entries.get(key);
+        if (entry != null)
+        {
+            hits.incrementAndGet();
+        }
+        else
+        {
+            misses.incrementAndGet();
+        }
+        return entry;
+    }
+
+    public synchronized void put(String key, RenderedTemplates entry)
+    {
+        if (maxSize > 0)
+        {
+            entries.put(key, entry);
+        }
+    }
+
+    /**
+     * Sets the max number of entries, 0 disables the cache
+     *
+     * @param maxSize - max entries
+     */
+    public synchronized void setMaxSize(int maxSize)
+    {
+        this.maxSize = maxSize;
+        if (maxSize <= 0)
+        {
+            entries.clear();
+        }
+        else
+        {
+            while (entries.size() > maxSize)
+            {
+                entries.remove(entries.keySet().iterator().next());
+            }
+        }
+    }
+
+    /**
+     * Removes all entries, called when templates are reloaded
+     */
+    public synchronized void clear()
+    {
+        entries.clear();
+    }
+
+    public synchronized int getMaxSize()
+    {
+        return maxSize;
+    }
+
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+}
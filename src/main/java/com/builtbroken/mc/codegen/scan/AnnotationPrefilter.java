@@ -0,0 +1,156 @@
+package com.builtbroken.mc.codegen.scan;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Checks raw file bytes for any of the processor annotation keys so files that can not
+ * have a processor annotation are skipped before anything is decoded.
+ * <p>
+ * The keys are built into an Aho-Corasick automaton which is then expanded into a full
+ * transition table, so each byte costs a single table lookup no matter how many keys there
+ * are. Keys are matched as UTF-8 anywhere in the data, comments and strings included, so
+ * a match only means the file may have the annotation and its header is still parsed.
+ *
+ * @see <a href="https://github.com/BuiltBrokenModding/VoltzEngine/blob/development/license.md">License</a> for what you can and can't do with the code.
+ */
+public class AnnotationPrefilter
+{
+    /** Next state for each state and byte, indexed by state * 256 + byte */
+    private final int[] transitions;
+    /** States where a key ends */
+    private final boolean[] accepting;
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * @param keys - annotation names, without the @
+     */
+    public AnnotationPrefilter(Collection<String> keys)
+    {
+        //Trie of the keys, -1 for missing edges
+        final List<int[]> edges = new ArrayList();
+        final List<Boolean> ends = new ArrayList();
+        edges.add(newRow());
+        ends.add(false);
+        for (String key : keys)
+        {
+            int state = 0;
+            for (byte b : key.getBytes(StandardCharsets.UTF_8))
+            {
+                final int c = b & 0xFF;
+                if (edges.get(state)[c] == -1)
+                {
+                    edges.get(state)[c] = edges.size();
+                    edges.add(newRow());
+                    ends.add(false);
+                }
+                state = edges.get(state)[c];
+            }
+            ends.set(state, true);
+        }
+
+        //Walk breadth first to find failure links, missing edges take the edge of the failure state
+        final int states = edges.size();
+        final int[] fail = new int[states];
+        final Queue<Integer> queue = new ArrayDeque();
+        for (int c = 0; c < 256; c++)
+        {
+            final int next = edges.get(0)[c];
+            if (next == -1)
+            {
+                edges.get(0)[c] = 0;
+            }
+            else
+            {
+                fail[next] = 0;
+                queue.add(next);
+            }
+        }
+        while (!queue.isEmpty())
+        {
+            final int state = queue.poll();
+            if (ends.get(fail[state]))
+            {
+                ends.set(state, true);
+            }
+            final int[] row = edges.get(state);
+            for (int c = 0; c < 256; c++)
+            {
+                if (row[c] == -1)
+                {
+                    row[c] = edges.get(fail[state])[c];
+                }
+                else
+                {
+                    fail[row[c]] = edges.get(fail[state])[c];
+                    queue.add(row[c]);
+                }
+            }
+        }
+
+        transitions = new int[states * 256];
+        accepting = new boolean[states];
+        for (int state = 0; state < states; state++)
+        {
+            System.arraycopy(edges.get(state), 0, transitions, state * 256, 256);
+            accepting[state] = ends.get(state);
+        }
+    }
+
+    private static int[] newRow()
+    {
+        final int[] row = new int[256];
+        Arrays.fill(row, -1);
+        return row;
+    }
+
+    /**
+     * Checks if any key is in the data
+     *
+     * @param data   - bytes to check
+     * @param offset - index to start at
+     * @param length - number of bytes to check
+     * @return true if a key was found
+     */
+    public boolean matches(byte[] data, int offset, int length)
+    {
+        if (accepting[0])
+        {
+            return true;
+        }
+        int state = 0;
+        final int end = offset + length;
+        for (int i = offset; i < end; i++)
+        {
+            state = transitions[(state << 8) | (data[i] & 0xFF)];
+            if (accepting[state])
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Called when a file is skipped because it had no key */
+    public void reject()
+    {
+        rejected.incrementAndGet();
+    }
+
+    /**
+     * Gets the number of files skipped
+     *
+     * @return file count
+     */
+    public long getRejected()
+    {
+        return rejected.get();
+    }
+}
@@ -0,0 +1,387 @@
+package com.builtbroken.mc.codegen.scan;
+
+import com.builtbroken.mc.codegen.data.ClassHeader;
+
+import com.builtbroken.mc.codegen.utils.Utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the package and annotations of a source file by scanning the raw bytes.
+ * <p>
+ * Does a single pass over the file that skips comments, string literals and imports,
+ * and stops at the first { outside of an annotation. Only the package name and the
+ * annotations are decoded into strings. Files are read into a per thread buffer that
+ * is reused between files, so most files cost a single read call. When given an
+ * {@link AnnotationPrefilter} files without any processor annotation key in their header
+ * are rejected before anything is decoded.
+ *
+ * @see <a href="https://github.com/BuiltBrokenModding/VoltzEngine/blob/development/license.md">License</a> for what you can and can't do with the code.
+ */
+public class HeaderScanner
+{
+    /** Size of the buffer each thread starts with, most headers fit inside this */
+    public static int INITIAL_BUFFER_SIZE = 16 * 1024;
+
+    private static final ThreadLocal<ByteBuffer> buffers = new ThreadLocal();
+
+    private static final byte[] PACKAGE = "package".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] IMPORT = "import".getBytes(StandardCharsets.US_ASCII);
+
+    /** Returned when the end of the data was hit before the header ended */
+    private static final int NEED_MORE = -1;
+
+    private final byte[] data;
+    private final int length;
+    private final boolean endOfFile;
+    /** False to only find the end of the header without building any strings */
+    private final boolean decode;
+
+    private String classPackage;
+    private final List<String> annotations = new ArrayList();
+
+    private HeaderScanner(byte[] data, int length, boolean endOfFile, boolean decode)
+    {
+        this.data = data;
+        this.length = length;
+        this.endOfFile = endOfFile;
+        this.decode = decode;
+    }
+
+    /**
+     * Scans the header of the file
+     *
+     * @param file - java file to read, may be inside an archive
+     * @return header, containing the class name taken from the file name
+     * @throws IOException
+     */
+    public static ClassHeader scan(Path file) throws IOException
+    {
+        return scan(file, null);
+    }
+
+    /**
+     * Scans the header of the file if it may contain a processor annotation
+     *
+     * @param file      - java file to read, may be inside an archive
+     * @param prefilter - annotation keys the header needs one of, null to scan every file
+     * @return header, or null if rejected by the prefilter
+     * @throws IOException
+     */
+    public static ClassHeader scan(Path file, AnnotationPrefilter prefilter) throws IOException
+    {
+        String className = Utils.getName(file);
+        className = className.substring(0, className.length() - 5);
+
+        ByteBuffer buffer = buffers.get();
+        if (buffer == null)
+        {
+            buffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+        }
+        buffer.clear();
+
+        SeekableByteChannel channel = Files.newByteChannel(file, StandardOpenOption.READ);
+        boolean candidate = prefilter == null;
+        try
+        {
+            while (true)
+            {
+                //Fill buffer
+                boolean endOfFile = false;
+                while (buffer.hasRemaining())
+                {
+                    if (channel.read(buffer) < 0)
+                    {
+                        endOfFile = true;
+                        break;
+                    }
+                }
+
+                if (!candidate)
+                {
+                    candidate = prefilter.matches(buffer.array(), 0, buffer.position());
+                    //No key in the whole header means none of its annotations have a processor
+                    if (!candidate && (endOfFile || new HeaderScanner(buffer.array(), buffer.position(), false, false).scanHeader() != NEED_MORE))
+                    {
+                        prefilter.reject();
+                        return null;
+                    }
+                }
+
+                if (candidate)
+                {
+                    HeaderScanner scanner = new HeaderScanner(buffer.array(), buffer.position(), endOfFile, true);
+                    if (scanner.scanHeader() != NEED_MORE)
+                    {
+                        ClassHeader header = new ClassHeader(file, className, scanner.classPackage, scanner.annotations);
+                        header.bytesRead = buffer.position();
+                        return header;
+                    }
+                }
+
+                //Header is larger than the buffer, grow and read the rest
+                ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+                buffer.flip();
+                larger.put(buffer);
+                buffer = larger;
+            }
+        }
+        finally
+        {
+            channel.close();
+            buffers.set(buffer);
+        }
+    }
+
+    /**
+     * Scans until the start of the class body
+     *
+     * @return index of the { that starts the body, end of data if never found, or {@link #NEED_MORE}
+     */
+    private int scanHeader()
+    {
+        int i = 0;
+        while (i < length)
+        {
+            final byte b = data[i];
+            if (b == '/' || b == '"' || b == '\'')
+            {
+                int end = skipCommentOrLiteral(i);
+                if (end == NEED_MORE)
+                {
+                    return NEED_MORE;
+                }
+                i = end;
+            }
+            else if (b == '{')
+            {
+                return i;
+            }
+            else if (b == '@')
+            {
+                i = readAnnotation(i + 1);
+                if (i == NEED_MORE)
+                {
+                    return NEED_MORE;
+                }
+            }
+            else if (isIdentifierStart(b))
+            {
+                int end = skipIdentifier(i);
+                if (end >= length && !endOfFile)
+                {
+                    return NEED_MORE;
+                }
+                if (classPackage == null && matches(i, end, PACKAGE))
+                {
+                    int semicolon = indexOf(end, ';');
+                    if (semicolon == NEED_MORE)
+                    {
+                        return NEED_MORE;
+                    }
+                    if (decode)
+                    {
+                        classPackage = decode(end, semicolon).trim();
+                    }
+                    end = semicolon + 1;
+                }
+                else if (matches(i, end, IMPORT))
+                {
+                    //Skip imports so not to parse {} or @ in them
+                    int semicolon = indexOf(end, ';');
+                    if (semicolon == NEED_MORE)
+                    {
+                        return NEED_MORE;
+                    }
+                    end = semicolon + 1;
+                }
+                i = end;
+            }
+            else
+            {
+                i++;
+            }
+        }
+        return endOfFile ? length : NEED_MORE;
+    }
+
+    /**
+     * Reads an annotation with arguments, annotations without arguments are skipped
+     *
+     * @param start - index after the @
+     * @return index after the annotation
+     */
+    private int readAnnotation(int start)
+    {
+        int i = start;
+        while (i < length && isWhitespace(data[i]))
+        {
+            i++;
+        }
+        int nameStart = i;
+        while (i < length && (isIdentifierPart(data[i]) || data[i] == '.'))
+        {
+            i++;
+        }
+        int nameEnd = i;
+        while (i < length && isWhitespace(data[i]))
+        {
+            i++;
+        }
+        if (i >= length)
+        {
+            return endOfFile ? length : NEED_MORE;
+        }
+        if (data[i] != '(' || nameStart == nameEnd)
+        {
+            return i;
+        }
+
+        //Find the closing ) while ignoring any inside of strings
+        int argsStart = i;
+        int depth = 0;
+        while (i < length)
+        {
+            final byte b = data[i];
+            if (b == '"' || b == '\'' || b == '/')
+            {
+                int end = skipCommentOrLiteral(i);
+                if (end == NEED_MORE)
+                {
+                    return NEED_MORE;
+                }
+                i = end;
+                continue;
+            }
+            else if (b == '(')
+            {
+                depth++;
+            }
+            else if (b == ')' && --depth == 0)
+            {
+                if (decode)
+                {
+                    annotations.add(decode(nameStart, nameEnd) + decode(argsStart, i + 1));
+                }
+                return i + 1;
+            }
+            i++;
+        }
+        return endOfFile ? length : NEED_MORE;
+    }
+
+    /**
+     * Skips a comment or literal starting at the index
+     *
+     * @param start - index of the / or quote
+     * @return index after the comment or literal, or {@link #NEED_MORE}
+     */
+    private int skipCommentOrLiteral(int start)
+    {
+        final byte b = data[start];
+        if (b == '/')
+        {
+            if (start + 1 >= length)
+            {
+                return endOfFile ? length : NEED_MORE;
+            }
+            if (data[start + 1] == '/')
+            {
+                int end = indexOf(start + 2, '\n');
+                return end == NEED_MORE ? NEED_MORE : end + 1;
+            }
+            else if (data[start + 1] == '*')
+            {
+                for (int i = start + 2; i + 1 < length; i++)
+                {
+                    if (data[i] == '*' && data[i + 1] == '/')
+                    {
+                        return i + 2;
+                    }
+                }
+                return endOfFile ? length : NEED_MORE;
+            }
+            return start + 1;
+        }
+
+        //String or char literal
+        for (int i = start + 1; i < length; i++)
+        {
+            if (data[i] == '\\')
+            {
+                i++;
+            }
+            else if (data[i] == b || data[i] == '\n')
+            {
+                return i + 1;
+            }
+        }
+        return endOfFile ? length : NEED_MORE;
+    }
+
+    private int indexOf(int start, char c)
+    {
+        for (int i = start; i < length; i++)
+        {
+            if (data[i] == c)
+            {
+                return i;
+            }
+        }
+        return endOfFile ? length : NEED_MORE;
+    }
+
+    private int skipIdentifier(int start)
+    {
+        int i = start;
+        while (i < length && isIdentifierPart(data[i]))
+        {
+            i++;
+        }
+        return i;
+    }
+
+    private boolean matches(int start, int end, byte[] word)
+    {
+        if (end - start != word.length)
+        {
+            return false;
+        }
+        for (int i = 0; i < word.length; i++)
+        {
+            if (data[start + i] != word[i])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String decode(int start, int end)
+    {
+        return new String(data, start, Math.min(end, length) - start, StandardCharsets.UTF_8);
+    }
+
+    private static boolean isWhitespace(byte b)
+    {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '\f';
+    }
+
+    private static boolean isIdentifierStart(byte b)
+    {
+        return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || b == '_' || b == '$' || b < 0;
+    }
+
+    private static boolean isIdentifierPart(byte b)
+    {
+        return isIdentifierStart(b) || (b >= '0' && b <= '9');
+    }
+}
@@ -0,0 +1,148 @@
+package com.builtbroken.mc.codegen.scan;
+
+import com.builtbroken.mc.codegen.Main;
+import com.builtbroken.mc.codegen.data.ClassHeader;
+import com.builtbroken.mc.codegen.processor.ProcessorIndex;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Fork join task that scans a directory and reads the header of each file on a worker thread.
+ * <p>
+ * Each sub directory is forked as its own task, files are grouped into batches so large
+ * flat folders are split between workers. Results are joined in the same order a
+ * sequential walk would visit them so the output matches a single threaded run.
+ *
+ * @see <a href="https://github.com/BuiltBrokenModding/VoltzEngine/blob/development/license.md">License</a> for what you can and can't do with the code.
+ */
+public class ScanTask extends RecursiveTask<List<ClassHeader>>
+{
+    private static final long serialVersionUID = 1L;
+
+    /** Max number of files to read in a single task */
+    public static int FILE_BATCH_SIZE = 32;
+
+    private final Path directory;
+    private final Path[] files;
+    private final ProcessorIndex processors;
+
+    /**
+     * Creates a task to scan a directory
+     *
+     * @param directory - folder to scan
+     */
+    public ScanTask(Path directory)
+    {
+        this(directory, null);
+    }
+
+    /**
+     * Creates a task to scan a directory
+     *
+     * @param directory  - folder to scan
+     * @param processors - processors to filter and record header reads for, null to read every file
+     */
+    public ScanTask(Path directory, ProcessorIndex processors)
+    {
+        this.directory = directory;
+        this.files = null;
+        this.processors = processors;
+    }
+
+    /**
+     * Creates a task to read a batch of files
+     *
+     * @param files      - files to read, should not contain directories
+     * @param processors - processors to filter and record header reads for, null to read every file
+     */
+    protected ScanTask(Path[] files, ProcessorIndex processors)
+    {
+        this.directory = null;
+        this.files = files;
+        this.processors = processors;
+    }
+
+    @Override
+    protected List<ClassHeader> compute()
+    {
+        if (directory != null)
+        {
+            return scanDirectory();
+        }
+        return readFiles();
+    }
+
+    protected List<ClassHeader> scanDirectory()
+    {
+        final Path[] entries = Main.listFiles(directory);
+
+        //Split entries into tasks, keeping visit order
+        final List<ScanTask> tasks = new ArrayList();
+        int batchStart = -1;
+        for (int i = 0; i < entries.length; i++)
+        {
+            if (Files.isDirectory(entries[i]))
+            {
+                if (batchStart != -1)
+                {
+                    addBatches(tasks, entries, batchStart, i);
+                    batchStart = -1;
+                }
+                tasks.add(new ScanTask(entries[i], processors));
+            }
+            else if (batchStart == -1)
+            {
+                batchStart = i;
+            }
+        }
+        if (batchStart != -1)
+        {
+            addBatches(tasks, entries, batchStart, entries.length);
+        }
+
+        //Run tasks and join in order
+        invokeAll(tasks);
+        final List<ClassHeader> headers = new ArrayList();
+        for (ScanTask task : tasks)
+        {
+            headers.addAll(task.join());
+        }
+        return headers;
+    }
+
+    protected List<ClassHeader> readFiles()
+    {
+        final List<ClassHeader> headers = new ArrayList();
+        for (Path file : files)
+        {
+            try
+            {
+                ClassHeader header = Main.readHeader(file, processors);
+                if (header != null)
+                {
+                    headers.add(header);
+                }
+            }
+            catch (IOException e)
+            {
+                throw new UncheckedIOException("Unexpected exception while parsing " + file, e);
+            }
+        }
+        return headers;
+    }
+
+    private void addBatches(List<ScanTask> tasks, Path[] entries, int start, int end)
+    {
+        for (int i = start; i < end; i += FILE_BATCH_SIZE)
+        {
+            tasks.add(new ScanTask(Arrays.copyOfRange(entries, i, Math.min(end, i + FILE_BATCH_SIZE)), processors));
+        }
+    }
+}
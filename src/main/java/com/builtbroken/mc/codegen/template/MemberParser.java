@@ -0,0 +1,464 @@
+package com.builtbroken.mc.codegen.template;
+
+import com.builtbroken.mc.codegen.template.data.Field;
+import com.builtbroken.mc.codegen.template.data.Method;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Splits the field and method sections of a template into {@link Field} and {@link Method} entries.
+ * <p>
+ * Run once when a template is loaded so building output files only needs to append
+ * the parsed members. Comments, literals and nested brackets are skipped so a ; or }
+ * inside a string or initializer does not split a member.
+ *
+ * @see <a href="https://github.com/BuiltBrokenModding/VoltzEngine/blob/development/license.md">License</a> for what you can and can't do with the code.
+ */
+public class MemberParser
+{
+    public static final Set<String> MODIFIERS = new HashSet(Arrays.asList(
+            "public", "protected", "private", "static", "final", "abstract", "synchronized",
+            "native", "transient", "volatile", "strictfp", "default"));
+
+    /**
+     * Splits the field section into fields
+     *
+     * @param body - text between #StartFields# and //#EndFields#
+     * @return fields in order
+     */
+    public static List<Field> parseFields(String body)
+    {
+        final List<Field> fields = new ArrayList();
+        if (body == null)
+        {
+            return fields;
+        }
+        int depth = 0;
+        int start = 0;
+        for (int i = 0; i < body.length(); i++)
+        {
+            int skip = skipCommentOrLiteral(body, i);
+            if (skip != i)
+            {
+                i = skip - 1;
+                continue;
+            }
+            final char c = body.charAt(i);
+            if (c == '(' || c == '{' || c == '[')
+            {
+                depth++;
+            }
+            else if (c == ')' || c == '}' || c == ']')
+            {
+                depth--;
+            }
+            else if (c == ';' && depth == 0)
+            {
+                addFields(fields, body, start, i);
+                start = i + 1;
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * Splits the method section into methods
+     *
+     * @param body - text between #StartMethods# and //#EndMethods#
+     * @return methods in order
+     */
+    public static List<Method> parseMethods(String body)
+    {
+        final List<Method> methods = new ArrayList();
+        if (body == null)
+        {
+            return methods;
+        }
+        int braceDepth = 0;
+        int parenDepth = 0;
+        int start = 0;
+        int headerEnd = -1;
+        for (int i = 0; i < body.length(); i++)
+        {
+            int skip = skipCommentOrLiteral(body, i);
+            if (skip != i)
+            {
+                i = skip - 1;
+                continue;
+            }
+            final char c = body.charAt(i);
+            if (c == '(')
+            {
+                parenDepth++;
+            }
+            else if (c == ')')
+            {
+                parenDepth--;
+            }
+            else if (c == '{' && parenDepth == 0)
+            {
+                if (braceDepth++ == 0)
+                {
+                    headerEnd = i;
+                }
+            }
+            else if (c == '}' && parenDepth == 0)
+            {
+                if (--braceDepth == 0)
+                {
+                    addMethod(methods, body, start, headerEnd, i + 1);
+                    start = i + 1;
+                }
+            }
+            else if (c == ';' && braceDepth == 0 && parenDepth == 0)
+            {
+                //Abstract method or stray field
+                addMethod(methods, body, start, i, i + 1);
+                start = i + 1;
+            }
+        }
+        return methods;
+    }
+
+    private static void addFields(List<Field> fields, String body, int start, int end)
+    {
+        final String declaration = body.substring(start, end).trim();
+        final List<String> modifiers = new ArrayList();
+        final String code = removeModifiers(cleanCode(declaration), modifiers);
+        if (code.isEmpty())
+        {
+            return;
+        }
+
+        //One declaration can name several fields, int a = 1, b;
+        final int declarationStart = body.indexOf(declaration, start);
+        String type = null;
+        for (String declarator : splitDeclarators(code))
+        {
+            //Only the part before the initializer names the field
+            int equals = indexOfTopLevel(declarator, '=');
+            if (equals != -1)
+            {
+                declarator = declarator.substring(0, equals);
+            }
+            declarator = declarator.trim();
+
+            if (type == null)
+            {
+                int nameStart = lastIdentifierStart(declarator);
+                type = declarator.substring(0, nameStart).trim();
+                final String name = declarator.substring(nameStart).replace("[]", "").trim();
+                fields.add(new Field(name, type, modifiers, declaration, declarationStart, end));
+            }
+            else if (!declarator.isEmpty())
+            {
+                //The declaration is written once with the first field
+                final String name = declarator.replace("[]", "").trim();
+                fields.add(new Field(name, type, modifiers, declaration, declarationStart, end, ""));
+            }
+        }
+    }
+
+    private static void addMethod(List<Method> methods, String body, int start, int headerEnd, int end)
+    {
+        final String header = cleanCode(body.substring(start, headerEnd));
+        final int paren = indexOfTopLevel(header, '(');
+        if (paren <= 0)
+        {
+            //Initializer block or field
+            return;
+        }
+
+        String beforeParams = header.substring(0, paren).trim();
+        final List<String> modifiers = new ArrayList();
+        beforeParams = removeModifiers(beforeParams, modifiers);
+
+        int nameStart = lastIdentifierStart(beforeParams);
+        final String name = beforeParams.substring(nameStart).trim();
+        final String returnType = beforeParams.substring(0, nameStart).trim();
+
+        //Parameter types
+        final List<String> parameterTypes = new ArrayList();
+        int close = header.lastIndexOf(')');
+        String params = close > paren ? header.substring(paren + 1, close) : "";
+        for (String param : splitTopLevel(params))
+        {
+            param = removeModifiers(param.trim(), new ArrayList());
+            if (!param.isEmpty())
+            {
+                parameterTypes.add(param.substring(0, lastIdentifierStart(param)).replace(" ", ""));
+            }
+        }
+
+        //Skip leading whitespace so the span starts at the first comment or annotation
+        while (start < end && Character.isWhitespace(body.charAt(start)))
+        {
+            start++;
+        }
+        methods.add(new Method(name, returnType, modifiers, parameterTypes, start, end));
+    }
+
+    /**
+     * Removes comments and annotations and collapses whitespace into single spaces
+     *
+     * @param text - code to clean
+     * @return cleaned code
+     */
+    public static String cleanCode(String text)
+    {
+        final StringBuilder builder = new StringBuilder(text.length());
+        int i = 0;
+        while (i < text.length())
+        {
+            final char c = text.charAt(i);
+            int skip = skipCommentOrLiteral(text, i);
+            if (skip != i)
+            {
+                if (c == '"' || c == '\'')
+                {
+                    builder.append(text, i, skip);
+                }
+                else
+                {
+                    appendSpace(builder);
+                }
+                i = skip;
+            }
+            else if (c == '@')
+            {
+                i = skipAnnotation(text, i + 1);
+                appendSpace(builder);
+            }
+            else if (Character.isWhitespace(c))
+            {
+                appendSpace(builder);
+                i++;
+            }
+            else
+            {
+                builder.append(c);
+                i++;
+            }
+        }
+        return builder.toString().trim();
+    }
+
+    private static void appendSpace(StringBuilder builder)
+    {
+        if (builder.length() > 0 && builder.charAt(builder.length() - 1) != ' ')
+        {
+            builder.append(' ');
+        }
+    }
+
+    private static int skipAnnotation(String text, int i)
+    {
+        while (i < text.length() && (Character.isJavaIdentifierPart(text.charAt(i)) || text.charAt(i) == '.'))
+        {
+            i++;
+        }
+        int next = i;
+        while (next < text.length() && Character.isWhitespace(text.charAt(next)))
+        {
+            next++;
+        }
+        if (next < text.length() && text.charAt(next) == '(')
+        {
+            int depth = 0;
+            for (i = next; i < text.length(); i++)
+            {
+                int skip = skipCommentOrLiteral(text, i);
+                if (skip != i)
+                {
+                    i = skip - 1;
+                }
+                else if (text.charAt(i) == '(')
+                {
+                    depth++;
+                }
+                else if (text.charAt(i) == ')' && --depth == 0)
+                {
+                    return i + 1;
+                }
+            }
+        }
+        return i;
+    }
+
+    /**
+     * Gets the end of the comment or literal at the index
+     *
+     * @return index after the comment or literal, or the same index if there is none
+     */
+    private static int skipCommentOrLiteral(String text, int i)
+    {
+        final char c = text.charAt(i);
+        if (c == '/' && i + 1 < text.length())
+        {
+            if (text.charAt(i + 1) == '/')
+            {
+                int end = text.indexOf('\n', i);
+                return end == -1 ? text.length() : end;
+            }
+            else if (text.charAt(i + 1) == '*')
+            {
+                int end = text.indexOf("*/", i + 2);
+                return end == -1 ? text.length() : end + 2;
+            }
+        }
+        else if (c == '"' || c == '\'')
+        {
+            for (int j = i + 1; j < text.length(); j++)
+            {
+                if (text.charAt(j) == '\\')
+                {
+                    j++;
+                }
+                else if (text.charAt(j) == c || text.charAt(j) == '\n')
+                {
+                    return j + 1;
+                }
+            }
+            return text.length();
+        }
+        return i;
+    }
+
+    private static String removeModifiers(String code, List<String> modifiers)
+    {
+        while (true)
+        {
+            int space = code.indexOf(' ');
+            String word = space == -1 ? code : code.substring(0, space);
+            if (MODIFIERS.contains(word))
+            {
+                modifiers.add(word);
+                code = space == -1 ? "" : code.substring(space + 1);
+            }
+            else
+            {
+                return code;
+            }
+        }
+    }
+
+    private static int lastIdentifierStart(String code)
+    {
+        int end = code.length();
+        while (end > 0 && (code.charAt(end - 1) == ']' || code.charAt(end - 1) == '[' || code.charAt(end - 1) == ' '))
+        {
+            end--;
+        }
+        int start = end;
+        while (start > 0 && Character.isJavaIdentifierPart(code.charAt(start - 1)))
+        {
+            start--;
+        }
+        return start;
+    }
+
+    /** Finds the character outside of any brackets or generics */
+    private static int indexOfTopLevel(String code, char target)
+    {
+        int depth = 0;
+        for (int i = 0; i < code.length(); i++)
+        {
+            final char c = code.charAt(i);
+            if (c == target && depth == 0)
+            {
+                return i;
+            }
+            else if (c == '(' || c == '{' || c == '[' || c == '<')
+            {
+                depth++;
+            }
+            else if (c == ')' || c == '}' || c == ']' || c == '>')
+            {
+                depth--;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Splits a field declaration at the commas between its declarators. Inside an
+     * initializer a &lt; only counts as a bracket when it follows a name, so
+     * comparisons do not hide the commas after them.
+     */
+    private static List<String> splitDeclarators(String code)
+    {
+        final List<String> parts = new ArrayList();
+        int depth = 0;
+        int generics = 0;
+        boolean initializer = false;
+        int start = 0;
+        for (int i = 0; i < code.length(); i++)
+        {
+            int skip = skipCommentOrLiteral(code, i);
+            if (skip != i)
+            {
+                i = skip - 1;
+                continue;
+            }
+            final char c = code.charAt(i);
+            if (c == '(' || c == '{' || c == '[')
+            {
+                depth++;
+            }
+            else if (c == ')' || c == '}' || c == ']')
+            {
+                depth--;
+            }
+            else if (c == '<' && (!initializer || i > 0 && Character.isJavaIdentifierPart(code.charAt(i - 1))))
+            {
+                generics++;
+            }
+            else if (c == '>' && generics > 0)
+            {
+                generics--;
+            }
+            else if (c == '=' && depth == 0 && generics == 0)
+            {
+                initializer = true;
+            }
+            else if (c == ',' && depth == 0 && generics == 0)
+            {
+                parts.add(code.substring(start, i));
+                start = i + 1;
+                initializer = false;
+            }
+        }
+        parts.add(code.substring(start));
+        return parts;
+    }
+
+    private static List<String> splitTopLevel(String code)
+    {
+        final List<String> parts = new ArrayList();
+        int depth = 0;
+        int start = 0;
+        for (int i = 0; i < code.length(); i++)
+        {
+            final char c = code.charAt(i);
+            if (c == '<' || c == '(' || c == '[')
+            {
+                depth++;
+            }
+            else if (c == '>' || c == ')' || c == ']')
+            {
+                depth--;
+            }
+            else if (c == ',' && depth == 0)
+            {
+                parts.add(code.substring(start, i));
+                start = i + 1;
+            }
+        }
+        parts.add(code.substring(start));
+        return parts;
+    }
+}
@@ -2,6 +2,7 @@ package com.builtbroken.mc.codegen.template;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -27,4 +28,62 @@ public class Parser
         }
         return annotations;
     }
+
+    /**
+     * Collects all identifiers in the code, skipping comments and literals
+     *
+     * @param code  - java code
+     * @param names - set to add identifiers to
+     */
+    public static void collectIdentifiers(CharSequence code, Set<String> names)
+    {
+        final int length = code.length();
+        int i = 0;
+        while (i < length)
+        {
+            final char c = code.charAt(i);
+            if (c == '/' && i + 1 < length && code.charAt(i + 1) == '/')
+            {
+                while (i < length && code.charAt(i) != '\n')
+                {
+                    i++;
+                }
+            }
+            else if (c == '/' && i + 1 < length && code.charAt(i + 1) == '*')
+            {
+                i += 2;
+                while (i + 1 < length && !(code.charAt(i) == '*' && code.charAt(i + 1) == '/'))
+                {
+                    i++;
+                }
+                i += 2;
+            }
+            else if (c == '"' || c == '\'')
+            {
+                i++;
+                while (i < length && code.charAt(i) != c && code.charAt(i) != '\n')
+                {
+                    if (code.charAt(i) == '\\')
+                    {
+                        i++;
+                    }
+                    i++;
+                }
+                i++;
+            }
+            else if (Character.isJavaIdentifierStart(c))
+            {
+                final int start = i;
+                while (i < length && Character.isJavaIdentifierPart(code.charAt(i)))
+                {
+                    i++;
+                }
+                names.add(code.subSequence(start, i).toString());
+            }
+            else
+            {
+                i++;
+            }
+        }
+    }
 }
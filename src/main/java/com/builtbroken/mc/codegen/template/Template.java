@@ -1,15 +1,15 @@
 package com.builtbroken.mc.codegen.template;
 
 import com.builtbroken.mc.codegen.Main;
+import com.builtbroken.mc.codegen.logging.Log;
+import com.builtbroken.mc.codegen.template.data.Field;
+import com.builtbroken.mc.codegen.template.data.Method;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * @see <a href="https://github.com/BuiltBrokenModding/VoltzEngine/blob/development/license.md">License</a> for what you can and can't do with the code.
@@ -17,23 +17,15 @@ import java.util.regex.Pattern;
  */
 public class Template
 {
-    //regex101.com <- used to test pattterns, great site
-    public static Pattern importPattern = Pattern.compile("import(.*?);");
-    public static Pattern multiLineCommentPattern = Pattern.compile("\\/\\*(.*?)\\*\\/");
-    public static Pattern extendsPattern = Pattern.compile("extends(.*?)implements");
-    public static Pattern extendsPattern2 = Pattern.compile("extends(.*?)\\{");
-    public static Pattern implementsPattern = Pattern.compile("implements(.*?)\\{");
-
-    public static Pattern methodBodyPattern = Pattern.compile("(?s)#StartMethods#(.*?)//#EndMethods#(?-s)");
-    public static Pattern fieldBodyPattern = Pattern.compile("(?s)#StartFields#(.*?)//#EndFields#(?-s)");
-
     private List<String> imports = new ArrayList();
     private List<String> interfaces = new ArrayList();
     private List<String> annotations = new ArrayList();
-    //private HashMap<String, Method> methods = new HashMap();
-    //private HashMap<String, Field> fields = new HashMap();
-    public String fieldBody; //TODO replace with list of fields
-    public String methodBody; //TODO replace with list of methods
+    private List<Field> fields = new ArrayList();
+    private List<Method> methods = new ArrayList();
+    /** Raw text of the field section, null if the template has none */
+    public String fieldBody;
+    /** Raw text of the method section, null if the template has none */
+    public String methodBody;
 
     String classExtending;
     private boolean valid = true;
@@ -51,219 +43,96 @@ public class Template
     /**
      * @param file   - file to load
      * @param spacer - spacer for debug output, makes the messages look nice
-     * @return
+     * @return this, or null if the file is not a template for the annotation key
      * @throws IOException
      */
     public Template loadFile(File file, String spacer) throws IOException
     {
-        //TODO load the file
-        //TODO parse out all data
-        //TODO ensure extends TileEntityWrapper and nothing else
-        BufferedReader br = new BufferedReader(new FileReader(file));
-        StringBuilder builder = new StringBuilder();
-        try
-        {
-            String line;
-
-            //Read until we hit the class annotations
-            while ((line = br.readLine()) != null)
-            {
-                line = line.trim();
-                if (line.startsWith("@"))
-                {
-                    break;
-                }
-                else
-                {
-                    builder.append(line);
-                }
-            }
-
-            //Convert to string and parse imports
-            String string = builder.toString();
-            Matcher matcher = importPattern.matcher(string);
-            while (matcher.find())
-            {
-                for (int i = 1; i <= matcher.groupCount(); i++)
-                {
-                    imports.add(matcher.group(i).trim());
-                }
-            }
-
-            //Read in remaining annotations
-            builder = new StringBuilder();
-            builder.append(line); //Add last line since it was not used in imports
-            while ((line = br.readLine()) != null)
-            {
-                line = line.trim();
-                if (line.contains("class"))
-                {
-                    if (!line.startsWith("class"))
-                    {
-                        //This does not need to be perfect as all that matters is
-                        //  the annotations gets the rest of there parts
-                        //      and the rest is keep for imports
-                        builder.append(line.substring(0, line.indexOf("class")));
-                        line = line.substring(line.indexOf("class"), line.length());
-                    }
-                    break;
-                }
-                else
-                {
-                    builder.append(line);
-                }
-            }
+        return load(TemplateLexer.lex(new String(Files.readAllBytes(file.toPath())), file.getPath()), spacer);
+    }
 
-            //Match annotations from builder
-            string = builder.toString();
-            annotations.addAll(Parser.getAnnotations(string));
-            Main.out(spacer + "  Annotations:");
+    /**
+     * Loads the template from parsed template data
+     *
+     * @param data   - data parsed from the template file
+     * @param spacer - spacer for debug output, makes the messages look nice
+     * @return this, or null if the file is not a template for the annotation key
+     */
+    public Template load(TemplateFile data, String spacer)
+    {
+        final boolean debug = Log.isDebug();
+        annotations.addAll(data.annotations);
+        if (debug)
+        {
+            Log.debug(spacer + "  Annotations:");
             //Output annotation and parse
             for (String annotation : annotations)
             {
-                Main.out(spacer + "      " + annotation);
-                if (annotation.startsWith(annotationKey))
-                {
-                    String data = annotation.substring(annotation.indexOf("(") + 1, annotation.length() - 1);
-                    key = data.split("=")[1].replace("\"", "").trim();
-                }
-            }
-
-            if (key == null)
-            {
-                Main.out(spacer + "Class does not contain " + annotationKey + " or the key set was empty");
-                valid = false;
-                return null;
+                Log.debug(spacer + "      " + annotation);
             }
+        }
 
-            //Read everything until start of class body
-            builder = new StringBuilder();
-            builder.append(line); //Add last line since it was not used in annotations
-            while ((line = br.readLine()) != null)
-            {
-                line = line.trim();
-                //Ignore comments
-                if (!line.startsWith("//"))
-                {
-                    //if line contains a comment at end remove
-                    if (line.contains("//"))
-                    {
-                        line = line.substring(0, line.indexOf("/"));
-                        Main.warn("Found comment '" + line.substring(line.indexOf("/"), line.length()) + "' nested inside class header, commends should not be nested inside the class header. Remove these to improve class parsing and to improve readability.");
-
-                    }
-                    if (line.contains("{"))
-                    {
-                        builder.append(line);
-                        if (!line.startsWith("{"))
-                        {
-                            line = line.substring(line.indexOf("{") + 1, line.length());
-                        }
-                        break;
-                    }
-                    else
-                    {
-                        builder.append(line);
-                    }
-                }
-            }
-            string = builder.toString();
+        String annotationData = data.getAnnotationData(annotationKey);
+        if (annotationData != null && annotationData.contains("="))
+        {
+            key = annotationData.split("=")[1].replace("\"", "").trim();
+        }
 
-            //Remove comments and java docs from header
-            matcher = multiLineCommentPattern.matcher(string);
-            while (matcher.find())
-            {
-                for (int i = 1; i <= matcher.groupCount(); i++)
-                {
-                    String comment = "/*" + matcher.group(i) + "*/";
-                    string = string.replace(comment, "");
-                    Main.warn(spacer + "Found comment '" + comment + "' nested inside class header, commends should not be nested inside the class header. Remove these to improve class parsing and to improve readability.");
-                }
-            }
+        if (key == null || key.isEmpty())
+        {
+            Main.out(spacer + "Class does not contain " + annotationKey + " or the key set was empty");
+            valid = false;
+            return null;
+        }
 
-            //Match for extends
-            Main.out(spacer + "  Extends:");
-            matcher = extendsPattern.matcher(string);
-            //Check if pattern 1 works, extends class implements
-            if (matcher.find())
-            {
-                classExtending = matcher.group(1).trim();
-            }
-            //else try pattern 2, extends class {
-            if (classExtending == null)
-            {
-                matcher = extendsPattern2.matcher(string);
-                if (matcher.find())
-                {
-                    classExtending = matcher.group(1).trim();
-                }
-            }
+        for (String comment : data.headerComments)
+        {
+            Main.warn(spacer + "Found comment '" + comment + "' nested inside class header, commends should not be nested inside the class header. Remove these to improve class parsing and to improve readability.");
+        }
 
-            //Validate
-            if (classExtending != null)
-            {
-                Main.out(spacer + "      " + classExtending);
-                if (!classExtending.equals(extendsCheck))
-                {
-                    Main.out(spacer + "      Error class must extend TileEntityWrapper");
-                    valid = false;
-                    return this;
-                }
-            }
-            else
+        //Validate extends
+        classExtending = data.classExtending;
+        if (debug)
+        {
+            Log.debug(spacer + "  Extends:");
+            Log.debug(spacer + "      " + (classExtending != null ? classExtending : "none"));
+        }
+        if (classExtending != null)
+        {
+            if (!classExtending.equals(extendsCheck))
             {
-                Main.out(spacer + "      none");
-                Main.out(spacer + "      Error class must extend something");
+                Main.out(spacer + "      Error class must extend " + extendsCheck);
                 valid = false;
                 return this;
             }
+        }
+        else
+        {
+            Main.out(spacer + "      Error class must extend something");
+            valid = false;
+            return this;
+        }
 
-            //Match interfaces
-            Main.out(spacer + "  Interfaces:");
-            matcher = implementsPattern.matcher(string);
-            while (matcher.find())
+        //Interfaces
+        interfaces.addAll(data.interfaces);
+        if (debug)
+        {
+            Log.debug(spacer + "  Interfaces:");
+            for (String imp : interfaces)
             {
-                String[] imps = matcher.group(1).trim().split(",");
-                for (String imp : imps)
-                {
-                    interfaces.add(imp.trim());
-                    Main.out(spacer + "      " + imp);
-                }
+                Log.debug(spacer + "      " + imp);
             }
             if (interfaces.isEmpty())
             {
-                Main.out(spacer + "      none");
-            }
-
-            //Read reset of file
-            builder = new StringBuilder();
-            builder.append(line); //Add remaining bits of line
-            while ((line = br.readLine()) != null)
-            {
-                builder.append(line);
-                builder.append("\n");
-            }
-            string = builder.toString();
-
-            //match fields body
-            matcher = fieldBodyPattern.matcher(string);
-            if (matcher.find())
-            {
-                fieldBody = matcher.group(1);
-            }
-
-            //Match method body
-            matcher = methodBodyPattern.matcher(string);
-            if (matcher.find())
-            {
-                methodBody = matcher.group(1);
+                Log.debug(spacer + "      none");
             }
         }
-        finally
-        {
-            br.close();
-        }
 
+        imports.addAll(data.imports);
+        fieldBody = data.fieldBody;
+        methodBody = data.methodBody;
+        fields.addAll(data.fields);
+        methods.addAll(data.methods);
         return this;
     }
 
@@ -286,4 +155,24 @@ public class Template
     {
         return interfaces;
     }
+
+    /**
+     * Fields from the template in order, parsed once with the template file
+     *
+     * @return fields
+     */
+    public List<Field> getFields()
+    {
+        return fields;
+    }
+
+    /**
+     * Methods from the template in order, parsed once with the template file
+     *
+     * @return methods
+     */
+    public List<Method> getMethods()
+    {
+        return methods;
+    }
 }
@@ -0,0 +1,224 @@
+package com.builtbroken.mc.codegen.template;
+
+import com.builtbroken.mc.codegen.Main;
+import com.builtbroken.mc.codegen.utils.Utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * On disk cache of parsed template files so unchanged templates do not need to be parsed each run.
+ * <p>
+ * Entries are keyed by the absolute path of the template, or the jar: URI for templates
+ * inside an archive. An entry is used if the size and
+ * modified time match, or if the size matches and the content hash is the same. The second
+ * check covers files that were touched or checked out again without changes.
+ *
+ * @see <a href="https://github.com/BuiltBrokenModding/VoltzEngine/blob/development/license.md">License</a> for what you can and can't do with the code.
+ */
+public class TemplateCache
+{
+    /** Bump when the format of {@link TemplateFile} or the lexer output changes */
+    public static final int VERSION = 3;
+    private static final int MAGIC = 0x56455443; //VETC
+
+    /** File the cache is stored in, null to only keep the cache in memory */
+    public final File file;
+
+    private final Map<String, Entry> entries = new HashMap();
+    private boolean changed = false;
+
+    private int hits = 0;
+    private int misses = 0;
+
+    public TemplateCache(File file)
+    {
+        this.file = file;
+    }
+
+    /**
+     * Gets the parsed data for the template, parsing it if the cache is out of date
+     *
+     * @param templateFile - template file, may be inside an archive
+     * @return parsed data
+     * @throws IOException
+     */
+    public synchronized TemplateFile get(Path templateFile) throws IOException
+    {
+        final String path = Utils.getPathKey(templateFile);
+        final long size = Files.size(templateFile);
+        final long modified = Files.getLastModifiedTime(templateFile).toMillis();
+
+        Entry entry = entries.get(path);
+        if (entry != null && entry.size == size && entry.modified == modified)
+        {
+            hits++;
+            return entry.data;
+        }
+
+        final byte[] bytes = Files.readAllBytes(templateFile);
+        final String hash = Utils.hash(bytes);
+        if (entry != null && entry.size == size && entry.hash.equals(hash))
+        {
+            hits++;
+            entries.put(path, new Entry(size, modified, hash, entry.data));
+            changed = true;
+            return entry.data;
+        }
+
+        misses++;
+        TemplateFile data = TemplateLexer.lex(new String(bytes), path);
+        entries.put(path, new Entry(size, modified, hash, data));
+        changed = true;
+        return data;
+    }
+
+    public int getHits()
+    {
+        return hits;
+    }
+
+    public int getMisses()
+    {
+        return misses;
+    }
+
+    /**
+     * Loads the cache from disk, does nothing if the file does not exist
+     * or was written by a different version.
+     */
+    public synchronized void load()
+    {
+        if (file == null || !file.isFile())
+        {
+            return;
+        }
+        try
+        {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try
+            {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                {
+                    Main.out("Template cache " + file + " is from a different version, ignoring");
+                    return;
+                }
+                int count = in.readInt();
+                for (int i = 0; i < count; i++)
+                {
+                    String path = in.readUTF();
+                    long size = in.readLong();
+                    long modified = in.readLong();
+                    String hash = in.readUTF();
+                    entries.put(path, new Entry(size, modified, hash, TemplateFile.read(in)));
+                }
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        catch (IOException e)
+        {
+            Main.warn("Failed to read template cache " + file + ", templates will be parsed. Error: " + e);
+            entries.clear();
+        }
+    }
+
+    /**
+     * Saves the cache to disk if anything changed. Entries for
+     * templates that no longer exist are dropped.
+     *
+     * @throws IOException
+     */
+    public synchronized void save() throws IOException
+    {
+        if (file == null)
+        {
+            return;
+        }
+        Iterator<String> it = entries.keySet().iterator();
+        while (it.hasNext())
+        {
+            if (!exists(it.next()))
+            {
+                it.remove();
+                changed = true;
+            }
+        }
+        if (!changed && file.isFile())
+        {
+            return;
+        }
+        if (file.getParentFile() != null && !file.getParentFile().exists())
+        {
+            file.getParentFile().mkdirs();
+        }
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try
+        {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> e : entries.entrySet())
+            {
+                out.writeUTF(e.getKey());
+                out.writeLong(e.getValue().size);
+                out.writeLong(e.getValue().modified);
+                out.writeUTF(e.getValue().hash);
+                e.getValue().data.write(out);
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+        changed = false;
+    }
+
+    /** Checks if the template of a key still exists, only the archive is checked for templates inside one */
+    private static boolean exists(String path)
+    {
+        if (path.startsWith("jar:"))
+        {
+            int end = path.indexOf("!/");
+            try
+            {
+                return end != -1 && new File(URI.create(path.substring(4, end))).isFile();
+            }
+            catch (IllegalArgumentException e)
+            {
+                return false;
+            }
+        }
+        return new File(path).isFile();
+    }
+
+    private static class Entry
+    {
+        final long size;
+        final long modified;
+        final String hash;
+        final TemplateFile data;
+
+        Entry(long size, long modified, String hash, TemplateFile data)
+        {
+            this.size = size;
+            this.modified = modified;
+            this.hash = hash;
+            this.data = data;
+        }
+    }
+}
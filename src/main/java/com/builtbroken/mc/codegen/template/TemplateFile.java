@@ -0,0 +1,198 @@
+package com.builtbroken.mc.codegen.template;
+
+import com.builtbroken.mc.codegen.template.data.Field;
+import com.builtbroken.mc.codegen.template.data.Method;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Data parsed from a template file by the {@link TemplateLexer}, including the fields
+ * and methods split by the {@link MemberParser}.
+ * <p>
+ * Does not depend on any processor, a {@link Template} is created
+ * from this by checking it against the processor's annotation and class.
+ *
+ * @see <a href="https://github.com/BuiltBrokenModding/VoltzEngine/blob/development/license.md">License</a> for what you can and can't do with the code.
+ */
+public class TemplateFile
+{
+    /** Imports, without the import keyword or ; */
+    public final List<String> imports = new ArrayList();
+    /** Annotations on the class, without the @ */
+    public final List<String> annotations = new ArrayList();
+    /** Interfaces from the implements clause */
+    public final List<String> interfaces = new ArrayList();
+    /** Comments found between the class keyword and the class body */
+    public final List<String> headerComments = new ArrayList();
+
+    /** Name of the class */
+    public String className;
+    /** Class from the extends clause, null if none */
+    public String classExtending;
+
+    /** Text between #StartFields# and //#EndFields#, null if not found */
+    public String fieldBody;
+    /** Text between #StartMethods# and //#EndMethods#, null if not found */
+    public String methodBody;
+
+    /** Fields split from the field body */
+    public final List<Field> fields = new ArrayList();
+    /** Methods split from the method body */
+    public final List<Method> methods = new ArrayList();
+
+    /**
+     * Gets the arguments of the annotation with the given name
+     *
+     * @param name - name of the annotation
+     * @return text between the ( ), or null if not found
+     */
+    public String getAnnotationData(String name)
+    {
+        for (String annotation : annotations)
+        {
+            int firstParn = annotation.indexOf("(");
+            if (firstParn > 0 && annotation.substring(0, firstParn).trim().equals(name))
+            {
+                return annotation.substring(firstParn + 1, annotation.length() - 1);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Writes the data in a compact binary form
+     *
+     * @param out - stream to write to
+     * @throws IOException
+     */
+    public void write(DataOutput out) throws IOException
+    {
+        writeList(out, imports);
+        writeList(out, annotations);
+        writeList(out, interfaces);
+        writeList(out, headerComments);
+        writeString(out, className);
+        writeString(out, classExtending);
+        writeString(out, fieldBody);
+        writeString(out, methodBody);
+
+        out.writeInt(fields.size());
+        for (Field field : fields)
+        {
+            writeString(out, field.name);
+            writeString(out, field.type);
+            writeList(out, field.modifiers);
+            writeString(out, field.declaration);
+            out.writeInt(field.start);
+            out.writeInt(field.end);
+            writeString(out, field.fragment);
+        }
+        out.writeInt(methods.size());
+        for (Method method : methods)
+        {
+            writeString(out, method.name);
+            writeString(out, method.returnType);
+            writeList(out, method.modifiers);
+            writeList(out, method.parameterTypes);
+            out.writeInt(method.start);
+            out.writeInt(method.end);
+        }
+    }
+
+    /**
+     * Reads data written by {@link #write(DataOutput)}
+     *
+     * @param in - stream to read from
+     * @return template data
+     * @throws IOException
+     */
+    public static TemplateFile read(DataInput in) throws IOException
+    {
+        TemplateFile file = new TemplateFile();
+        readList(in, file.imports);
+        readList(in, file.annotations);
+        readList(in, file.interfaces);
+        readList(in, file.headerComments);
+        file.className = readString(in);
+        file.classExtending = readString(in);
+        file.fieldBody = readString(in);
+        file.methodBody = readString(in);
+
+        int size = in.readInt();
+        for (int i = 0; i < size; i++)
+        {
+            String name = readString(in);
+            String type = readString(in);
+            List<String> modifiers = new ArrayList();
+            readList(in, modifiers);
+            String declaration = readString(in);
+            int start = in.readInt();
+            int end = in.readInt();
+            file.fields.add(new Field(name, type, modifiers, declaration, start, end, readString(in)));
+        }
+        size = in.readInt();
+        for (int i = 0; i < size; i++)
+        {
+            String name = readString(in);
+            String returnType = readString(in);
+            List<String> modifiers = new ArrayList();
+            readList(in, modifiers);
+            List<String> parameterTypes = new ArrayList();
+            readList(in, parameterTypes);
+            int start = in.readInt();
+            int end = in.readInt();
+            file.methods.add(new Method(name, returnType, modifiers, parameterTypes, start, end));
+        }
+        return file;
+    }
+
+    private static void writeList(DataOutput out, List<String> list) throws IOException
+    {
+        out.writeInt(list.size());
+        for (String string : list)
+        {
+            writeString(out, string);
+        }
+    }
+
+    private static void readList(DataInput in, List<String> list) throws IOException
+    {
+        int size = in.readInt();
+        for (int i = 0; i < size; i++)
+        {
+            list.add(readString(in));
+        }
+    }
+
+    /** Writes a nullable string, does not use writeUTF as bodies can be larger than 64kb */
+    private static void writeString(DataOutput out, String string) throws IOException
+    {
+        if (string == null)
+        {
+            out.writeInt(-1);
+        }
+        else
+        {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(DataInput in) throws IOException
+    {
+        int length = in.readInt();
+        if (length < 0)
+        {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,401 @@
+package com.builtbroken.mc.codegen.template;
+
+import com.builtbroken.mc.codegen.Main;
+
+import java.util.List;
+
+/**
+ * Single pass tokenizer for template files.
+ * <p>
+ * Walks the text once, skipping comments and literals, and fills in a
+ * {@link TemplateFile} with the imports, class annotations, extends and
+ * implements clauses, and the field and method regions marked by
+ * #StartFields# //#EndFields# and #StartMethods# //#EndMethods# line comments.
+ *
+ * @see <a href="https://github.com/BuiltBrokenModding/VoltzEngine/blob/development/license.md">License</a> for what you can and can't do with the code.
+ */
+public class TemplateLexer
+{
+    public static final String START_FIELDS = "#StartFields#";
+    public static final String END_FIELDS = "#EndFields#";
+    public static final String START_METHODS = "#StartMethods#";
+    public static final String END_METHODS = "#EndMethods#";
+
+    /** Before the class keyword, imports and annotations */
+    private static final int STATE_FILE_HEADER = 0;
+    /** Between the class keyword and the { */
+    private static final int STATE_CLASS_HEADER = 1;
+    /** Inside the class */
+    private static final int STATE_BODY = 2;
+
+    /** Class header clause currently being read */
+    private static final int CLAUSE_NAME = 0;
+    private static final int CLAUSE_EXTENDS = 1;
+    private static final int CLAUSE_IMPLEMENTS = 2;
+
+    private final String text;
+    private final int length;
+    private final TemplateFile result = new TemplateFile();
+
+    private int state = STATE_FILE_HEADER;
+    private int clause = CLAUSE_NAME;
+    private final StringBuilder extendsClause = new StringBuilder();
+    private final StringBuilder implementsClause = new StringBuilder();
+
+    private int fieldStart = -1;
+    private int methodStart = -1;
+
+    private TemplateLexer(String text)
+    {
+        this.text = text;
+        this.length = text.length();
+    }
+
+    /**
+     * Parses the template text
+     *
+     * @param text - contents of the template file
+     * @return parsed data
+     */
+    public static TemplateFile lex(String text)
+    {
+        TemplateLexer lexer = new TemplateLexer(text);
+        lexer.run();
+        return lexer.result;
+    }
+
+    /**
+     * Parses the template text and warns about regions that were started but never ended
+     *
+     * @param text - contents of the template file
+     * @param name - name of the template file, used for warnings
+     * @return parsed data
+     */
+    public static TemplateFile lex(String text, String name)
+    {
+        TemplateLexer lexer = new TemplateLexer(text);
+        lexer.run();
+        if (lexer.fieldStart != -1 && lexer.result.fieldBody == null)
+        {
+            Main.warn("Template " + name + " has a " + START_FIELDS + " marker without a //" + END_FIELDS + " marker, its fields will be ignored");
+        }
+        if (lexer.methodStart != -1 && lexer.result.methodBody == null)
+        {
+            Main.warn("Template " + name + " has a " + START_METHODS + " marker without a //" + END_METHODS + " marker, its methods will be ignored");
+        }
+        return lexer.result;
+    }
+
+    private void run()
+    {
+        int i = 0;
+        while (i < length)
+        {
+            final char c = text.charAt(i);
+            if (c == '/' && i + 1 < length && text.charAt(i + 1) == '/')
+            {
+                i = lineComment(i);
+            }
+            else if (c == '/' && i + 1 < length && text.charAt(i + 1) == '*')
+            {
+                i = blockComment(i);
+            }
+            else if (c == '"' || c == '\'')
+            {
+                int end = skipLiteral(i);
+                append(i, end);
+                i = end;
+            }
+            else if (Character.isJavaIdentifierStart(c))
+            {
+                i = identifier(i);
+            }
+            else if (c == '@' && state == STATE_FILE_HEADER)
+            {
+                i = annotation(i + 1);
+            }
+            else if (c == '{' && state == STATE_CLASS_HEADER)
+            {
+                finishClassHeader();
+                state = STATE_BODY;
+                i++;
+            }
+            else
+            {
+                append(i, i + 1);
+                i++;
+            }
+        }
+
+        //Members are split here so templates loaded from the cache do not parse them again
+        result.fields.addAll(MemberParser.parseFields(result.fieldBody));
+        result.methods.addAll(MemberParser.parseMethods(result.methodBody));
+    }
+
+    private int lineComment(int start)
+    {
+        int end = text.indexOf('\n', start);
+        if (end == -1)
+        {
+            end = length;
+        }
+        if (state == STATE_BODY)
+        {
+            //Region markers are placed in line comments, start markers may have other text
+            //before them and whitespace is allowed between the // and an end marker
+            int content = start + 2;
+            while (content < end && Character.isWhitespace(text.charAt(content)))
+            {
+                content++;
+            }
+            final int fields = fieldStart == -1 ? markerEnd(START_FIELDS, start + 2, end) : -1;
+            final int methods = methodStart == -1 ? markerEnd(START_METHODS, start + 2, end) : -1;
+            if (fields != -1)
+            {
+                fieldStart = fields;
+            }
+            else if (fieldStart != -1 && result.fieldBody == null && text.startsWith(END_FIELDS, content))
+            {
+                result.fieldBody = region(fieldStart, start);
+            }
+            else if (methods != -1)
+            {
+                methodStart = methods;
+            }
+            else if (methodStart != -1 && result.methodBody == null && text.startsWith(END_METHODS, content))
+            {
+                result.methodBody = region(methodStart, start);
+            }
+        }
+        else if (state == STATE_CLASS_HEADER)
+        {
+            result.headerComments.add(text.substring(start, end).trim());
+            append(' ');
+        }
+        return end;
+    }
+
+    /**
+     * Finds a marker inside a comment
+     *
+     * @param marker - marker to find
+     * @param start  - start of the comment text
+     * @param end    - end of the comment
+     * @return index after the marker, or -1 if the comment does not contain it
+     */
+    private int markerEnd(String marker, int start, int end)
+    {
+        for (int i = start; i + marker.length() <= end; i++)
+        {
+            if (text.startsWith(marker, i))
+            {
+                return i + marker.length();
+            }
+        }
+        return -1;
+    }
+
+    private int blockComment(int start)
+    {
+        int end = text.indexOf("*/", start + 2);
+        end = end == -1 ? length : end + 2;
+        if (state == STATE_CLASS_HEADER)
+        {
+            result.headerComments.add(text.substring(start, end));
+            append(' ');
+        }
+        return end;
+    }
+
+    private int skipLiteral(int start)
+    {
+        final char quote = text.charAt(start);
+        for (int i = start + 1; i < length; i++)
+        {
+            final char c = text.charAt(i);
+            if (c == '\\')
+            {
+                i++;
+            }
+            else if (c == quote || c == '\n')
+            {
+                return i + 1;
+            }
+        }
+        return length;
+    }
+
+    private int identifier(int start)
+    {
+        int end = start + 1;
+        while (end < length && Character.isJavaIdentifierPart(text.charAt(end)))
+        {
+            end++;
+        }
+        if (state == STATE_BODY)
+        {
+            return end;
+        }
+        final String word = text.substring(start, end);
+        if (state == STATE_FILE_HEADER)
+        {
+            if (word.equals("import"))
+            {
+                int semicolon = statementEnd(end);
+                result.imports.add(text.substring(end, semicolon).trim());
+                return Math.min(length, semicolon + 1);
+            }
+            else if (word.equals("package"))
+            {
+                return Math.min(length, statementEnd(end) + 1);
+            }
+            else if (word.equals("class") || word.equals("interface") || word.equals("enum"))
+            {
+                state = STATE_CLASS_HEADER;
+            }
+        }
+        else if (state == STATE_CLASS_HEADER)
+        {
+            if (word.equals("extends"))
+            {
+                clause = CLAUSE_EXTENDS;
+            }
+            else if (word.equals("implements"))
+            {
+                clause = CLAUSE_IMPLEMENTS;
+            }
+            else if (clause == CLAUSE_NAME && result.className == null)
+            {
+                result.className = word;
+            }
+            else
+            {
+                append(start, end);
+            }
+        }
+        return end;
+    }
+
+    private int annotation(int start)
+    {
+        int i = start;
+        while (i < length && (Character.isJavaIdentifierPart(text.charAt(i)) || text.charAt(i) == '.'))
+        {
+            i++;
+        }
+        final String name = text.substring(start, i);
+        final int nameEnd = i;
+        while (i < length && Character.isWhitespace(text.charAt(i)))
+        {
+            i++;
+        }
+        if (i >= length || text.charAt(i) != '(')
+        {
+            if (!name.isEmpty())
+            {
+                result.annotations.add(name);
+            }
+            return nameEnd;
+        }
+
+        //Find the closing ), skipping literals
+        final int argsStart = i;
+        int depth = 0;
+        while (i < length)
+        {
+            final char c = text.charAt(i);
+            if (c == '"' || c == '\'')
+            {
+                i = skipLiteral(i);
+                continue;
+            }
+            else if (c == '(')
+            {
+                depth++;
+            }
+            else if (c == ')' && --depth == 0)
+            {
+                result.annotations.add(name + text.substring(argsStart, i + 1));
+                return i + 1;
+            }
+            i++;
+        }
+        return length;
+    }
+
+    private int statementEnd(int start)
+    {
+        int end = text.indexOf(';', start);
+        return end == -1 ? length : end;
+    }
+
+    private void append(char c)
+    {
+        if (clause == CLAUSE_EXTENDS)
+        {
+            extendsClause.append(c);
+        }
+        else if (clause == CLAUSE_IMPLEMENTS)
+        {
+            implementsClause.append(c);
+        }
+    }
+
+    private void append(int start, int end)
+    {
+        if (state == STATE_CLASS_HEADER)
+        {
+            if (clause == CLAUSE_EXTENDS)
+            {
+                extendsClause.append(text, start, end);
+            }
+            else if (clause == CLAUSE_IMPLEMENTS)
+            {
+                implementsClause.append(text, start, end);
+            }
+        }
+    }
+
+    private void finishClassHeader()
+    {
+        final String extending = extendsClause.toString().trim();
+        if (!extending.isEmpty())
+        {
+            result.classExtending = extending;
+        }
+        splitTypes(implementsClause, result.interfaces);
+    }
+
+    /** Splits a list of types on commas that are not inside generics */
+    private static void splitTypes(CharSequence types, List<String> out)
+    {
+        int depth = 0;
+        int start = 0;
+        for (int i = 0; i <= types.length(); i++)
+        {
+            final char c = i < types.length() ? types.charAt(i) : ',';
+            if (c == '<')
+            {
+                depth++;
+            }
+            else if (c == '>')
+            {
+                depth--;
+            }
+            else if (c == ',' && depth == 0)
+            {
+                String type = types.subSequence(start, i).toString().trim();
+                if (!type.isEmpty())
+                {
+                    out.add(type);
+                }
+                start = i + 1;
+            }
+        }
+    }
+
+    private String region(int start, int end)
+    {
+        return text.substring(start, end).replace("\r", "");
+    }
+}
@@ -0,0 +1,96 @@
+package com.builtbroken.mc.codegen.template;
+
+import com.builtbroken.mc.codegen.Main;
+import com.builtbroken.mc.codegen.utils.Utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Template folders loaded once and shared between the jobs of a batch run.
+ * <p>
+ * Each folder is kept as its own {@link TemplateRegistry}, jobs copy the entries of the
+ * folders they use into their own registry. The parsed {@link TemplateFile}s are shared
+ * so they must not be changed after loading. Archives stay open until {@link #close()}
+ * so jobs can hash the template files they used.
+ *
+ * @see <a href="https://github.com/BuiltBrokenModding/VoltzEngine/blob/development/license.md">License</a> for what you can and can't do with the code.
+ */
+public class TemplateLibrary
+{
+    /** Cache of parsed templates, null to parse every file */
+    public final TemplateCache cache;
+
+    /** Canonical path of the folder to its templates */
+    private final Map<String, TemplateRegistry> folders = new HashMap();
+    /** Archives opened to read templates from */
+    private final List<FileSystem> archives = new ArrayList();
+
+    public TemplateLibrary(TemplateCache cache)
+    {
+        this.cache = cache;
+    }
+
+    /**
+     * Gets the templates in the folder, loading them if this is the first job to use the folder
+     *
+     * @param folder - template folder or archive
+     * @return registry containing only the templates of the folder
+     */
+    public synchronized TemplateRegistry getFolder(File folder)
+    {
+        String key;
+        try
+        {
+            key = folder.getCanonicalPath();
+        }
+        catch (IOException e)
+        {
+            key = folder.getAbsolutePath();
+        }
+
+        TemplateRegistry registry = folders.get(key);
+        if (registry == null)
+        {
+            Main.out("Loading templates from " + folder);
+            registry = new TemplateRegistry(cache);
+            try
+            {
+                registry.loadFolder(Utils.openFolder(folder, archives), 0);
+            }
+            catch (IOException e)
+            {
+                Main.error("Failed to load templates from " + folder, e);
+            }
+            folders.put(key, registry);
+        }
+        else
+        {
+            Main.out("Using loaded templates from " + folder);
+        }
+        return registry;
+    }
+
+    /**
+     * Gets the number of folders loaded
+     *
+     * @return folder count
+     */
+    public synchronized int size()
+    {
+        return folders.size();
+    }
+
+    /**
+     * Closes archives the templates were read from, call once all jobs are done
+     */
+    public synchronized void close()
+    {
+        Utils.closeAll(archives);
+    }
+}
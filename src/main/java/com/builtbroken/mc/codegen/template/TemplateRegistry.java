@@ -0,0 +1,173 @@
+package com.builtbroken.mc.codegen.template;
+
+import com.builtbroken.mc.codegen.Main;
+import com.builtbroken.mc.codegen.logging.Log;
+import com.builtbroken.mc.codegen.utils.Utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of all template files shared between processors.
+ * <p>
+ * Each template folder is walked and each file parsed once, the parsed files are
+ * then indexed by the annotations they carry. Processors pull the templates that
+ * have their template annotation and extend their class.
+ *
+ * @see <a href="https://github.com/BuiltBrokenModding/VoltzEngine/blob/development/license.md">License</a> for what you can and can't do with the code.
+ */
+public class TemplateRegistry
+{
+    /** Cache of parsed templates, null to parse every file */
+    public final TemplateCache cache;
+
+    /** All loaded template files in load order */
+    private final List<Entry> entries = new ArrayList();
+    /** Annotation name to template files that have it */
+    private final Map<String, List<Entry>> annotationToEntries = new HashMap();
+
+    public TemplateRegistry(TemplateCache cache)
+    {
+        this.cache = cache;
+    }
+
+    /**
+     * Called to load all templates in a folder
+     *
+     * @param directory - folder to load
+     * @param depth     - depth of the folder, used for debug output
+     * @throws IOException if a template file could not be read
+     */
+    public void loadFolder(File directory, int depth) throws IOException
+    {
+        loadFolder(directory.toPath(), depth);
+    }
+
+    /**
+     * Called to load all templates in a folder
+     *
+     * @param directory - folder to load, may be the root of an archive
+     * @param depth     - depth of the folder, used for debug output
+     * @throws IOException if a template file could not be read
+     */
+    public void loadFolder(Path directory, int depth) throws IOException
+    {
+        String spacer;
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i <= depth; i++)
+        {
+            builder.append("  ");
+        }
+        spacer = builder.toString();
+
+        if (Log.isDebug())
+        {
+            Log.debug(spacer + "*Directory: " + Utils.getName(directory));
+        }
+
+        for (Path file : Main.listFiles(directory))
+        {
+            if (Files.isDirectory(file))
+            {
+                loadFolder(file, depth + 1);
+            }
+            else
+            {
+                try
+                {
+                    add(file, cache != null ? cache.get(file) : TemplateLexer.lex(new String(Files.readAllBytes(file)), file.toString()));
+                }
+                catch (IOException e)
+                {
+                    throw new IOException("Failed to load template from file " + file, e);
+                }
+                if (Log.isDebug())
+                {
+                    Log.debug(spacer + "--File: " + Utils.getName(file));
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds a parsed template file to the registry
+     *
+     * @param file - file the template was loaded from
+     * @param data - parsed data
+     */
+    public void add(Path file, TemplateFile data)
+    {
+        Entry entry = new Entry(file, data);
+        entries.add(entry);
+        for (String annotation : data.annotations)
+        {
+            int firstParn = annotation.indexOf("(");
+            String name = (firstParn > 0 ? annotation.substring(0, firstParn) : annotation).trim();
+            List<Entry> list = annotationToEntries.get(name);
+            if (list == null)
+            {
+                list = new ArrayList();
+                annotationToEntries.put(name, list);
+            }
+            list.add(entry);
+        }
+    }
+
+    /**
+     * Adds all template files from another registry
+     *
+     * @param registry - registry to copy entries from
+     */
+    public void addAll(TemplateRegistry registry)
+    {
+        for (Entry entry : registry.getEntries())
+        {
+            add(entry.file, entry.data);
+        }
+    }
+
+    /**
+     * Gets all template files with the annotation
+     *
+     * @param annotation - name of the annotation
+     * @return template files in load order
+     */
+    public List<Entry> getTemplates(String annotation)
+    {
+        List<Entry> list = annotationToEntries.get(annotation);
+        return list != null ? list : Collections.<Entry>emptyList();
+    }
+
+    /**
+     * Gets all template files in load order
+     *
+     * @return template files
+     */
+    public List<Entry> getEntries()
+    {
+        return entries;
+    }
+
+    /**
+     * Template file and its parsed data
+     */
+    public static class Entry
+    {
+        /** File the template was loaded from, may be inside an archive */
+        public final Path file;
+        public final TemplateFile data;
+
+        public Entry(Path file, TemplateFile data)
+        {
+            this.file = file;
+            this.data = data;
+        }
+    }
+}
@@ -1,9 +1,51 @@
 package com.builtbroken.mc.codegen.template.data;
 
+import java.util.List;
+
 /**
+ * Field declared in the #StartFields# section of a template
+ *
  * @see <a href="https://github.com/BuiltBrokenModding/VoltzEngine/blob/development/license.md">License</a> for what you can and can't do with the code.
  * Created by Dark(DarkGuardsman, Robert) on 4/1/2017.
  */
 public class Field
 {
+    /** Name of the field */
+    public final String name;
+    /** Type of the field */
+    public final String type;
+    /** Modifiers such as public, static and final */
+    public final List<String> modifiers;
+
+    /** Full declaration including any comments and the initializer, without the ; */
+    public final String declaration;
+    /** Start of the declaration in the template's field body */
+    public final int start;
+    /** End of the declaration in the template's field body, index of the ; */
+    public final int end;
+
+    /** Text written to the output file for this field, empty if another field of the same declaration writes it */
+    public final String fragment;
+
+    public Field(String name, String type, List<String> modifiers, String declaration, int start, int end)
+    {
+        this(name, type, modifiers, declaration, start, end, "\t" + declaration + ";\n");
+    }
+
+    public Field(String name, String type, List<String> modifiers, String declaration, int start, int end, String fragment)
+    {
+        this.name = name;
+        this.type = type;
+        this.modifiers = modifiers;
+        this.declaration = declaration;
+        this.start = start;
+        this.end = end;
+        this.fragment = fragment;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "Field[" + type + " " + name + "]";
+    }
 }
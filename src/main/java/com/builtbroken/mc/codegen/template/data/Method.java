@@ -1,9 +1,58 @@
 package com.builtbroken.mc.codegen.template.data;
 
+import java.util.List;
+
 /**
+ * Method declared in the #StartMethods# section of a template
+ *
  * @see <a href="https://github.com/BuiltBrokenModding/VoltzEngine/blob/development/license.md">License</a> for what you can and can't do with the code.
  * Created by Dark(DarkGuardsman, Robert) on 4/1/2017.
  */
 public class Method
 {
+    /** Name of the method */
+    public final String name;
+    /** Return type of the method */
+    public final String returnType;
+    /** Modifiers such as public, static and final */
+    public final List<String> modifiers;
+    /** Types of the parameters in order */
+    public final List<String> parameterTypes;
+
+    /** Start of the method, including annotations and comments, in the template's method body */
+    public final int start;
+    /** End of the method in the template's method body, index after the closing } */
+    public final int end;
+
+    /** Name and parameter types, used to detect duplicates */
+    public final String signature;
+
+    public Method(String name, String returnType, List<String> modifiers, List<String> parameterTypes, int start, int end)
+    {
+        this.name = name;
+        this.returnType = returnType;
+        this.modifiers = modifiers;
+        this.parameterTypes = parameterTypes;
+        this.start = start;
+        this.end = end;
+
+        StringBuilder builder = new StringBuilder(name);
+        builder.append("(");
+        for (int i = 0; i < parameterTypes.size(); i++)
+        {
+            if (i > 0)
+            {
+                builder.append(",");
+            }
+            builder.append(parameterTypes.get(i));
+        }
+        builder.append(")");
+        this.signature = builder.toString();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "Method[" + returnType + " " + signature + "]";
+    }
 }
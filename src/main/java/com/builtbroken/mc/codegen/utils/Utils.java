@@ -1,8 +1,20 @@
 package com.builtbroken.mc.codegen.utils;
 
 import com.builtbroken.mc.codegen.Main;
+import com.builtbroken.mc.codegen.logging.Log;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
 
 public class Utils
 {
@@ -46,7 +58,10 @@ public class Utils
             {
                 if (file.delete())
                 {
-                    Main.out("Deleted: " + file);
+                    if (Log.isDebug())
+                    {
+                        Log.debug("Deleted: " + file);
+                    }
                 }
                 else
                 {
@@ -55,4 +70,219 @@ public class Utils
             }
         }
     }
+
+    /**
+     * Writes the data to the file only if the file does not
+     * already contain the exact same bytes. Avoids changing
+     * the modified time of files that did not change.
+     *
+     * @param file - file to write
+     * @param data - bytes to write
+     * @return true if the file was written, false if it was already up to date
+     * @throws IOException
+     */
+    public static boolean writeIfChanged(File file, byte[] data) throws IOException
+    {
+        //Length check first so we only read files that could match
+        if (file.isFile() && file.length() == data.length && Arrays.equals(Files.readAllBytes(file.toPath()), data))
+        {
+            return false;
+        }
+        FileOutputStream stream = new FileOutputStream(file);
+        try
+        {
+            stream.write(data);
+        }
+        finally
+        {
+            stream.close();
+        }
+        return true;
+    }
+
+    /**
+     * Gets the path of a file relative to a folder using / as the separator
+     *
+     * @param folder - parent folder
+     * @param file   - file inside the folder
+     * @return relative path, or the absolute path if the file is not inside the folder
+     */
+    public static String getRelativePath(File folder, File file)
+    {
+        String base = folder.getAbsolutePath();
+        String path = file.getAbsolutePath();
+        if (path.startsWith(base) && path.length() > base.length())
+        {
+            path = path.substring(base.length() + 1);
+        }
+        return path.replace(File.separatorChar, '/');
+    }
+
+    /**
+     * Gets the path of a file relative to a folder using / as the separator
+     *
+     * @param folder - parent folder, from the same file system as the file
+     * @param file   - file inside the folder
+     * @return relative path
+     */
+    public static String getRelativePath(Path folder, Path file)
+    {
+        return folder.toAbsolutePath().relativize(file.toAbsolutePath()).toString().replace(file.getFileSystem().getSeparator(), "/");
+    }
+
+    /**
+     * Gets a string that identifies the path between runs. This is the absolute
+     * path for files on disk and the jar: URI for entries inside an archive.
+     *
+     * @param path - path to get the key for
+     * @return key
+     */
+    public static String getPathKey(Path path)
+    {
+        if (path.getFileSystem() == FileSystems.getDefault())
+        {
+            return path.toAbsolutePath().toString();
+        }
+        return path.toUri().toString();
+    }
+
+    /**
+     * Gets the name of the file or folder, works for the root of an archive
+     *
+     * @param path - path
+     * @return last name of the path
+     */
+    public static String getName(Path path)
+    {
+        String name = path.getFileName() != null ? path.getFileName().toString() : path.toString();
+        if (name.length() > 1 && name.endsWith("/"))
+        {
+            name = name.substring(0, name.length() - 1);
+        }
+        return name;
+    }
+
+    /**
+     * Checks if the file is a jar or zip archive that can be used in place of a folder
+     *
+     * @param file - file to check
+     * @return true if archive
+     */
+    public static boolean isArchive(File file)
+    {
+        final String name = file.getName().toLowerCase(Locale.ROOT);
+        return file.isFile() && (name.endsWith(".jar") || name.endsWith(".zip"));
+    }
+
+    /**
+     * Gets the folder to read files from. Archives are opened as a zip file
+     * system so entries are read in place without extracting them.
+     *
+     * @param file   - folder or archive
+     * @param opened - list the opened file system is added to, the caller closes it when done
+     * @return root folder
+     * @throws IOException
+     */
+    public static Path openFolder(File file, List<FileSystem> opened) throws IOException
+    {
+        if (isArchive(file))
+        {
+            FileSystem fileSystem = FileSystems.newFileSystem(file.toPath(), (ClassLoader) null);
+            opened.add(fileSystem);
+            return fileSystem.getPath("/");
+        }
+        return file.toPath();
+    }
+
+    /**
+     * Closes file systems opened by {@link #openFolder(File, List)}
+     *
+     * @param opened - file systems to close, cleared after
+     */
+    public static void closeAll(List<FileSystem> opened)
+    {
+        for (FileSystem fileSystem : opened)
+        {
+            try
+            {
+                fileSystem.close();
+            }
+            catch (IOException e)
+            {
+                Main.warn("Failed to close archive " + fileSystem + ". Error: " + e);
+            }
+        }
+        opened.clear();
+    }
+
+    /**
+     * Creates a new digest used for content hashes
+     *
+     * @return digest
+     */
+    public static MessageDigest createDigest()
+    {
+        try
+        {
+            return MessageDigest.getInstance("SHA-1");
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new RuntimeException("Failed to get SHA-1 digest", e);
+        }
+    }
+
+    /**
+     * Converts the digest to a hex string
+     *
+     * @param digest - digest to finish
+     * @return hash as hex
+     */
+    public static String toHex(MessageDigest digest)
+    {
+        StringBuilder builder = new StringBuilder();
+        for (byte b : digest.digest())
+        {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16));
+            builder.append(Character.forDigit(b & 0xF, 16));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Gets the content hash of the data
+     *
+     * @param data - bytes to hash
+     * @return hash as hex
+     */
+    public static String hash(byte[] data)
+    {
+        MessageDigest digest = createDigest();
+        digest.update(data);
+        return toHex(digest);
+    }
+
+    /**
+     * Gets the content hash of the file
+     *
+     * @param file - file to read
+     * @return hash as hex
+     * @throws IOException
+     */
+    public static String hashFile(File file) throws IOException
+    {
+        return hashFile(file.toPath());
+    }
+
+    /**
+     * Gets the content hash of the file
+     *
+     * @param file - file to read, may be inside an archive
+     * @return hash as hex
+     * @throws IOException
+     */
+    public static String hashFile(Path file) throws IOException
+    {
+        return hash(Files.readAllBytes(file));
+    }
 }
@@ -0,0 +1,577 @@
+package com.builtbroken.mc.codegen.watch;
+
+import com.builtbroken.mc.codegen.Main;
+import com.builtbroken.mc.codegen.data.BuildData;
+import com.builtbroken.mc.codegen.data.BuildManifest;
+import com.builtbroken.mc.codegen.data.ClassHeader;
+import com.builtbroken.mc.codegen.processor.Processor;
+import com.builtbroken.mc.codegen.processor.ProcessorIndex;
+import com.builtbroken.mc.codegen.template.TemplateCache;
+import com.builtbroken.mc.codegen.template.TemplateFile;
+import com.builtbroken.mc.codegen.template.TemplateRegistry;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps processors and templates loaded after the first run and regenerates
+ * outputs as the source and template folders change.
+ * <p>
+ * A changed source file is passed to its processors again and outputs it no longer
+ * creates are deleted. A changed template is parsed again and the processors using
+ * its template annotation reload their templates, then every source for those
+ * processors is regenerated. Processors with a finalize step are told which sources changed
+ * or were removed through {@link Processor#handleRemovedFile(File, BuildData, String)} before
+ * they are handled again, so registries they write match a full build. Processors that can not
+ * remove sources are created again and given every source instead. Events are
+ * collected for {@link #SETTLE_TIME} ms so an editor saving several files causes a single update.
+ *
+ * @see <a href="https://github.com/BuiltBrokenModding/VoltzEngine/blob/development/license.md">License</a> for what you can and can't do with the code.
+ */
+public class WatchDaemon
+{
+    /** Milliseconds to wait for more events before regenerating */
+    public static int SETTLE_TIME = 50;
+
+    private final ProcessorIndex processors;
+    private final List<File> templateFolders;
+    private final File sourceFolder;
+    private final File outputFolder;
+    private final BuildManifest manifest;
+    private final File manifestFile;
+    private final TemplateCache templateCache;
+
+    private TemplateRegistry registry;
+    /** True once the templates were loaded again, processors created after need to reload them */
+    private boolean registryReloaded = false;
+    /** Source key to the header last passed to processors with a finalize step */
+    private final Map<String, ClassHeader> finalizeHeaders = new HashMap();
+
+    private WatchService watchService;
+    private final Map<WatchKey, Path> keyToFolder = new HashMap();
+
+    /**
+     * @param processors      - processors with templates loaded
+     * @param registry        - registry the templates were loaded from
+     * @param templateCache   - cache used to load the registry, null to create one in memory
+     * @param templateFolders - template folders to watch
+     * @param sourceFolder    - source folder to watch
+     * @param outputFolder    - folder outputs are written to
+     * @param manifest        - manifest filled in by the first run, tracks the outputs of each source
+     * @param manifestFile    - file the manifest is saved to after each update
+     */
+    public WatchDaemon(ProcessorIndex processors, TemplateRegistry registry, TemplateCache templateCache, List<File> templateFolders, File sourceFolder, File outputFolder, BuildManifest manifest, File manifestFile)
+    {
+        this.processors = processors;
+        this.registry = registry;
+        this.templateCache = templateCache != null ? templateCache : new TemplateCache(null);
+        this.templateFolders = templateFolders;
+        this.sourceFolder = sourceFolder;
+        this.outputFolder = outputFolder;
+        this.manifest = manifest;
+        this.manifestFile = manifestFile;
+
+        //Changes are always regenerated, the manifest is only used to track outputs
+        manifest.previous = null;
+    }
+
+    /**
+     * Watches the folders until the thread is interrupted
+     *
+     * @throws IOException
+     */
+    public void run() throws IOException
+    {
+        loadFinalizeHeaders();
+        watchService = FileSystems.getDefault().newWatchService();
+        try
+        {
+            register(sourceFolder);
+            for (File folder : templateFolders)
+            {
+                register(folder);
+            }
+            Main.out("");
+            Main.out("Watching " + keyToFolder.size() + " folders for changes, stop the program to exit");
+
+            while (!Thread.currentThread().isInterrupted())
+            {
+                //Wait for the first change then collect any that follow shortly after
+                final Set<File> changed = new LinkedHashSet();
+                WatchKey key = watchService.take();
+                while (key != null)
+                {
+                    collect(key, changed);
+                    key = watchService.poll(SETTLE_TIME, TimeUnit.MILLISECONDS);
+                }
+                update(changed);
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        catch (ClosedWatchServiceException e)
+        {
+            //Stopped
+        }
+        finally
+        {
+            watchService.close();
+        }
+    }
+
+    /** Reads the headers of the sources handled by processors with a finalize step, the file may change before they need them */
+    private void loadFinalizeHeaders()
+    {
+        final Set<String> finalizing = new HashSet();
+        for (Processor processor : processors.getProcessors())
+        {
+            if (processor.hasFinalize() && processor.canRemoveFiles())
+            {
+                finalizing.add(processor.getClass().getName());
+            }
+        }
+        if (finalizing.isEmpty())
+        {
+            return;
+        }
+        for (String sourceKey : manifest.getSourceKeys())
+        {
+            if (!Collections.disjoint(manifest.get(sourceKey).processors, finalizing))
+            {
+                final File file = new File(sourceFolder, sourceKey);
+                try
+                {
+                    ClassHeader header = Main.readHeader(file.toPath());
+                    if (header != null)
+                    {
+                        finalizeHeaders.put(sourceKey, header);
+                    }
+                }
+                catch (IOException e)
+                {
+                    Main.warn("Failed to read " + file + ", finalize may keep its data if it changes. Error: " + e);
+                }
+            }
+        }
+    }
+
+    /** Registers the folder and all sub folders */
+    private void register(File folder) throws IOException
+    {
+        final Path path = folder.toPath();
+        keyToFolder.put(path.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE), path);
+        for (File file : Main.listFiles(folder))
+        {
+            if (file.isDirectory())
+            {
+                register(file);
+            }
+        }
+    }
+
+    private void collect(WatchKey key, Set<File> changed) throws IOException
+    {
+        final Path folder = keyToFolder.get(key);
+        for (WatchEvent<?> event : key.pollEvents())
+        {
+            if (folder == null || event.kind() == StandardWatchEventKinds.OVERFLOW)
+            {
+                //Lost events, treat every known source and template as changed
+                Main.warn("Watch events were lost, regenerating everything");
+                for (String sourceKey : manifest.getSourceKeys())
+                {
+                    changed.add(new File(sourceFolder, sourceKey));
+                }
+                for (TemplateRegistry.Entry entry : registry.getEntries())
+                {
+                    changed.add(entry.file.toFile());
+                }
+                continue;
+            }
+            final File file = folder.resolve((Path) event.context()).toFile();
+            if (file.isDirectory())
+            {
+                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE)
+                {
+                    register(file);
+                    addFiles(file, changed);
+                }
+            }
+            else
+            {
+                changed.add(file);
+            }
+        }
+        if (!key.reset())
+        {
+            keyToFolder.remove(key);
+        }
+    }
+
+    /** Adds all files in a new folder, they may have been created before the folder was registered */
+    private void addFiles(File folder, Set<File> changed)
+    {
+        for (File file : Main.listFiles(folder))
+        {
+            if (file.isDirectory())
+            {
+                addFiles(file, changed);
+            }
+            else
+            {
+                changed.add(file);
+            }
+        }
+    }
+
+    /**
+     * Regenerates the outputs for the changed files
+     *
+     * @param changed - files that were created, modified or deleted
+     */
+    protected void update(Set<File> changed)
+    {
+        final long start = System.nanoTime();
+
+        //Sort into templates and sources
+        final List<File> templates = new ArrayList();
+        final Set<File> sources = new TreeSet();
+        for (File file : changed)
+        {
+            if (isInside(file, templateFolders))
+            {
+                templates.add(file);
+            }
+            else if (file.getName().endsWith(".java"))
+            {
+                sources.add(file);
+            }
+        }
+
+        //Reload templates and queue sources of the processors that use them
+        final Set<Processor> reloaded = new LinkedHashSet();
+        if (!templates.isEmpty())
+        {
+            reloaded.addAll(reloadTemplates(templates));
+            for (String sourceKey : manifest.getSourceKeys())
+            {
+                final File file = new File(sourceFolder, sourceKey);
+                try
+                {
+                    ClassHeader header = Main.readHeader(file.toPath());
+                    if (header != null && usesAny(header, reloaded))
+                    {
+                        sources.add(file);
+                    }
+                }
+                catch (IOException e)
+                {
+                    sources.add(file);
+                }
+            }
+        }
+
+        //Regenerate sources
+        final Set<Processor> used = new LinkedHashSet(reloaded);
+        int outputs = 0;
+        for (File file : sources)
+        {
+            outputs += regenerate(file, used);
+        }
+
+        //Processors with a finalize step collect data from each file, ones that can not remove the
+        //changed files are created again and given every source so finalize does not keep removed ones
+        final Set<Processor> finalizing = new LinkedHashSet();
+        final Set<Processor> fresh = new LinkedHashSet();
+        for (Processor processor : used)
+        {
+            if (processor.hasFinalize() && processor.canRemoveFiles())
+            {
+                finalizing.add(processor);
+            }
+            else if (processor.hasFinalize())
+            {
+                final Processor reset = processors.reset(processor);
+                if (reset != processor)
+                {
+                    //Loader uses the templates of the first run
+                    if (registryReloaded)
+                    {
+                        reset.reloadTemplates(registry);
+                    }
+                    fresh.add(reset);
+                }
+                finalizing.add(reset);
+            }
+        }
+        if (!fresh.isEmpty())
+        {
+            replay(fresh);
+        }
+        for (Processor processor : finalizing)
+        {
+            processor.finalize(outputFolder);
+        }
+
+        try
+        {
+            manifest.save(manifestFile);
+        }
+        catch (IOException e)
+        {
+            Main.warn("Failed to save build manifest. Error: " + e);
+        }
+
+        Main.out("Updated " + outputs + " outputs from " + sources.size() + " sources and " + templates.size() + " templates in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+    }
+
+    /**
+     * Passes every known source of the processors to them again, outputs that
+     * did not change are not written
+     *
+     * @param targets - processors to pass the sources to
+     */
+    private void replay(Set<Processor> targets)
+    {
+        for (String sourceKey : manifest.getSourceKeys())
+        {
+            final BuildManifest.Entry entry = manifest.get(sourceKey);
+            final List<Processor> list = new ArrayList();
+            for (Processor processor : targets)
+            {
+                if (entry != null && entry.processors.contains(processor.getClass().getName()))
+                {
+                    list.add(processor);
+                }
+            }
+            if (list.isEmpty())
+            {
+                continue;
+            }
+
+            final File file = new File(sourceFolder, sourceKey);
+            try
+            {
+                final ClassHeader header = Main.readHeader(file.toPath());
+                if (header != null)
+                {
+                    for (Processor processor : list)
+                    {
+                        final BuildData buildData = new BuildData(Main.getAnnotationData(header), header.classPackage, header.className);
+                        if (processor.canSkipUpToDate())
+                        {
+                            processor.handleUpToDateFile(outputFolder, buildData, "  ");
+                        }
+                        else
+                        {
+                            processor.handleFile(outputFolder, buildData, "  ");
+                        }
+                    }
+                }
+            }
+            catch (IOException e)
+            {
+                Main.warn("Failed to pass " + file + " to the reset processors. Error: " + e);
+            }
+            catch (UncheckedIOException e)
+            {
+                Main.warn("Failed to pass " + file + " to the reset processors. Error: " + e.getMessage() + ", " + e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Parses the changed templates again and reloads the processors that use them
+     *
+     * @param changed - changed template files
+     * @return processors that were reloaded
+     */
+    private Set<Processor> reloadTemplates(List<File> changed)
+    {
+        //Annotations of the changed templates before the change
+        final Set<String> annotations = new LinkedHashSet();
+        for (TemplateRegistry.Entry entry : registry.getEntries())
+        {
+            if (changed.contains(entry.file.toFile()))
+            {
+                addAnnotationNames(entry.data, annotations);
+            }
+        }
+
+        //Load the folders again, unchanged files come from the cache
+        final TemplateRegistry newRegistry = new TemplateRegistry(templateCache);
+        try
+        {
+            for (File folder : templateFolders)
+            {
+                newRegistry.loadFolder(folder, 0);
+            }
+        }
+        catch (IOException e)
+        {
+            //File may still be being written, the next change event loads it again
+            Main.warn("Failed to reload templates, keeping the loaded templates. Error: " + e);
+            return new LinkedHashSet();
+        }
+        for (TemplateRegistry.Entry entry : newRegistry.getEntries())
+        {
+            if (changed.contains(entry.file.toFile()))
+            {
+                addAnnotationNames(entry.data, annotations);
+            }
+        }
+        registry = newRegistry;
+        registryReloaded = true;
+
+        final Set<Processor> reloaded = new LinkedHashSet();
+        for (Processor processor : processors.getProcessors())
+        {
+            if (annotations.contains(processor.templateAnnotationKey))
+            {
+                Main.out("Reloading templates for " + processor);
+                processor.reloadTemplates(registry);
+                reloaded.add(processor);
+            }
+        }
+        return reloaded;
+    }
+
+    /**
+     * Generates the outputs of the source again, deleting outputs it no longer creates
+     *
+     * @param file - source file
+     * @param used - set to add processors that handled the file to
+     * @return number of outputs the source now has
+     */
+    private int regenerate(File file, Set<Processor> used)
+    {
+        final String sourceKey = manifest.getSourceKey(file.toPath());
+        final BuildManifest.Entry old = manifest.remove(sourceKey);
+        final ClassHeader oldHeader = finalizeHeaders.remove(sourceKey);
+        if (old != null)
+        {
+            //Processors of a removed source still need to finalize without it
+            for (Processor processor : processors.getProcessors())
+            {
+                if (old.processors.contains(processor.getClass().getName()))
+                {
+                    used.add(processor);
+                    if (oldHeader != null && processor.hasFinalize() && processor.canRemoveFiles())
+                    {
+                        processor.handleRemovedFile(outputFolder, new BuildData(Main.getAnnotationData(oldHeader), oldHeader.classPackage, oldHeader.className), "  ");
+                    }
+                }
+            }
+        }
+        try
+        {
+            if (file.isFile())
+            {
+                ClassHeader header = Main.readHeader(file.toPath());
+                if (header != null)
+                {
+                    Main.handleHeader(header, processors, outputFolder, manifest, "  ");
+                    for (String annotation : header.annotations)
+                    {
+                        List<Processor> list = processors.get(annotation.substring(0, annotation.indexOf("(")));
+                        if (list != null)
+                        {
+                            used.addAll(list);
+                            for (Processor processor : list)
+                            {
+                                if (processor.hasFinalize())
+                                {
+                                    finalizeHeaders.put(sourceKey, header);
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            Main.warn("Failed to generate outputs for " + file + ". Error: " + e);
+        }
+        catch (UncheckedIOException e)
+        {
+            Main.warn("Failed to generate outputs for " + file + ". Error: " + e.getMessage() + ", " + e.getCause());
+        }
+
+        final BuildManifest.Entry entry = manifest.get(sourceKey);
+        if (old != null)
+        {
+            for (String output : old.outputs.keySet())
+            {
+                if (entry == null || !entry.outputs.containsKey(output))
+                {
+                    File outFile = new File(outputFolder, output);
+                    if (outFile.exists() && !outFile.delete())
+                    {
+                        Main.warn("Failed to delete stale file: " + outFile);
+                    }
+                }
+            }
+        }
+        return entry != null ? entry.outputs.size() : 0;
+    }
+
+    private static boolean usesAny(ClassHeader header, Set<Processor> processors)
+    {
+        for (String annotation : header.annotations)
+        {
+            final String name = annotation.substring(0, annotation.indexOf("("));
+            for (Processor processor : processors)
+            {
+                if (processor.annotationKey.equals(name))
+                {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static void addAnnotationNames(TemplateFile data, Set<String> names)
+    {
+        for (String annotation : data.annotations)
+        {
+            int firstParn = annotation.indexOf("(");
+            names.add((firstParn > 0 ? annotation.substring(0, firstParn) : annotation).trim());
+        }
+    }
+
+    private static boolean isInside(File file, List<File> folders)
+    {
+        final String path = file.getAbsolutePath();
+        for (File folder : folders)
+        {
+            if (path.startsWith(folder.getAbsolutePath() + File.separator))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+}